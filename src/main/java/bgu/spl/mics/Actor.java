@@ -0,0 +1,139 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a {@link MicroService} as a task on a shared {@link Executor} instead of on a thread of
+ * its own. The task is submitted only when the service's queue has messages, and at most one
+ * task per service is queued or running, so its callbacks still run one at a time and in order.
+ * <p>
+ * A task handles one batch of at most {@link MicroService#MAX_BATCH} messages and then
+ * resubmits itself if more are waiting, so a busy service cannot starve the others.
+ * A callback interrupting its thread terminates the service, as it does in thread mode.
+ */
+final class Actor implements Runnable {
+	private final MicroService service;
+	private final Executor executor;
+	private final AtomicBoolean scheduled;
+	private final CompletableFuture<Void> done;
+	private final List<Message> batch;
+	private volatile Mailbox queue;
+	private boolean started;
+
+	Actor(MicroService service, Executor executor) {
+		this.service = service;
+		this.executor = executor;
+		scheduled = new AtomicBoolean(true);
+		done = new CompletableFuture<>();
+		batch = new ArrayList<>(MicroService.MAX_BATCH);
+		service.scheduleAs(this);
+	}
+
+	/**
+	 * Submits the first task, which registers and initializes the service.
+	 */
+	void start() {
+		executor.execute(this);
+	}
+
+	/**
+	 * @return completes when the service has terminated and unregistered.
+	 */
+	CompletableFuture<Void> getDone() {
+		return done;
+	}
+
+	/**
+	 * @return a view of {@code queue} that schedules this actor whenever a message is added.
+	 */
+	Mailbox bind(Mailbox queue) {
+		this.queue = queue;
+		return new SchedulingMailbox(queue);
+	}
+
+	@Override
+	public void run() {
+		// Pool threads are shared by all simulations, so the service's own one is bound per task
+		try (SimulationContext.Scope scope = service.getContext().bind()) {
+			runBatch();
+		}
+	}
+
+	private void runBatch() {
+		try {
+			if (!started) {
+				started = true;
+				service.start();
+			}
+			else {
+				queue.drainTo(batch, MicroService.MAX_BATCH);
+				service.dispatch(batch);
+			}
+		}
+		catch (RuntimeException e) {
+			MessageBusImpl.getInstance().unregister(service);
+			done.completeExceptionally(e);
+			// Report it as an uncaught exception, like a service on its own thread would
+			Thread current = Thread.currentThread();
+			current.getUncaughtExceptionHandler().uncaughtException(current, e);
+			return;
+		}
+		finally {
+			batch.clear();
+			// The pool thread is shared: the interrupt was meant for this service only
+			if (Thread.interrupted()) {
+				service.terminate();
+			}
+		}
+		if (service.isTerminated()) {
+			MessageBusImpl.getInstance().unregister(service);
+			done.complete(null);
+			return;
+		}
+		scheduled.set(false);
+		// A message added before the flag was cleared did not schedule us
+		if (queue.size() > 0) {
+			schedule();
+		}
+	}
+
+	private void schedule() {
+		if (!done.isDone() && scheduled.compareAndSet(false, true)) {
+			executor.execute(this);
+		}
+	}
+
+	private final class SchedulingMailbox implements Mailbox {
+		private final Mailbox queue;
+
+		SchedulingMailbox(Mailbox queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void offer(Message m) {
+			queue.offer(m);
+			schedule();
+		}
+
+		@Override
+		public Message take() throws InterruptedException {
+			return queue.take();
+		}
+
+		@Override
+		public int drainTo(Collection<? super Message> batch, int max) {
+			return queue.drainTo(batch, max);
+		}
+
+		@Override
+		public int size() {
+			return queue.size();
+		}
+	}
+}
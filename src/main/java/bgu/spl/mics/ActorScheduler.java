@@ -0,0 +1,68 @@
+package bgu.spl.mics;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs {@link MicroService}s as actors on a shared work-stealing {@link ForkJoinPool}.
+ * <p>
+ * A service only occupies a pool thread while it has messages to handle, so hundreds of mostly
+ * idle services can share a few cores. The callbacks of one service still run sequentially.
+ * Services whose callbacks block for long (e.g. sleep between ticks) should keep a thread of
+ * their own, since they would hold a pool thread while blocked.
+ */
+public class ActorScheduler {
+	private final ForkJoinPool pool;
+	private final List<CompletableFuture<Void>> running;
+
+	/**
+	 * Creates a scheduler with one pool thread per available processor.
+	 */
+	public ActorScheduler() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism the number of pool threads.
+	 */
+	public ActorScheduler(int parallelism) {
+		// FIFO mode: actors resubmit themselves, so LIFO would let one busy actor monopolize a worker
+		pool = new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+		running = new CopyOnWriteArrayList<>();
+	}
+
+	/**
+	 * Registers and initializes {@code m} on the pool, then runs its callbacks whenever
+	 * messages arrive. {@code m} must not also be run on a thread.
+	 * <p>
+	 * @return completes when {@code m} has terminated.
+	 */
+	public CompletableFuture<Void> start(MicroService m) {
+		Actor actor = new Actor(m, pool);
+		running.add(actor.getDone());
+		actor.start();
+		return actor.getDone();
+	}
+
+	/**
+	 * Waits until every started service has terminated, then shuts the pool down.
+	 */
+	public void awaitTermination() throws InterruptedException {
+		try {
+			for (CompletableFuture<Void> done : running) {
+				try {
+					done.get();
+				}
+				catch (ExecutionException e) {
+					// Already reported when the callback threw
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package bgu.spl.mics;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Mailbox} holding at most a fixed number of messages, applying an
+ * {@link OverflowPolicy} when a message arrives while it is full.
+ * <p>
+ * With {@link OverflowPolicy#BLOCK} or {@link OverflowPolicy#COALESCE} a sender may wait, which
+ * relaxes the non-blocking guarantee of {@link MessageBus#sendEvent(Event)}; two services that
+ * both block on each other's full mailbox deadlock, so size these mailboxes accordingly.
+ * A sender interrupted while waiting stops waiting and enqueues past the capacity.
+ * <p>
+ * Only broadcasts are ever dropped: an event carries a {@link Future} its sender waits on,
+ * so an event arriving while full always waits as with {@link OverflowPolicy#BLOCK}.
+ */
+public class BoundedMailbox implements Mailbox {
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final ArrayDeque<Message> queue;
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	private final Condition notFull;
+	private final AtomicLong overflows;
+	private final AtomicLong drops;
+
+	/**
+	 * @param capacity the maximal number of queued messages.
+	 * @param policy   what to do with a message that arrives while full.
+	 */
+	public BoundedMailbox(int capacity, OverflowPolicy policy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		this.policy = policy;
+		queue = new ArrayDeque<>(capacity);
+		lock = new ReentrantLock();
+		notEmpty = lock.newCondition();
+		notFull = lock.newCondition();
+		overflows = new AtomicLong();
+		drops = new AtomicLong();
+	}
+
+	@Override
+	public void offer(Message m) {
+		lock.lock();
+		try {
+			if (queue.size() >= capacity) {
+				overflows.incrementAndGet();
+				switch (policy) {
+					case DROP_NEWEST:
+						if (m instanceof Broadcast) {
+							drops.incrementAndGet();
+							return;
+						}
+						awaitNotFull();
+						break;
+					case DROP_OLDEST:
+						if (m instanceof Broadcast && removeOldestBroadcast()) {
+							drops.incrementAndGet();
+							break;
+						}
+						awaitNotFull();
+						break;
+					case COALESCE:
+						if (replaceOldestOfType(m)) {
+							drops.incrementAndGet();
+							return;
+						}
+						awaitNotFull();
+						break;
+					default:
+						awaitNotFull();
+				}
+			}
+			queue.offer(m);
+			notEmpty.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public Message take() throws InterruptedException {
+		lock.lockInterruptibly();
+		try {
+			while (queue.isEmpty()) {
+				notEmpty.await();
+			}
+			Message m = queue.poll();
+			notFull.signal();
+			return m;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Message> batch, int max) {
+		lock.lock();
+		try {
+			int count = 0;
+			while (count < max && !queue.isEmpty()) {
+				batch.add(queue.poll());
+				++count;
+			}
+			if (count > 0) {
+				notFull.signalAll();
+			}
+			return count;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int size() {
+		lock.lock();
+		try {
+			return queue.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public OverflowPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return how many times a message arrived while this mailbox was full, i.e. how
+	 *         often the overflow policy fired.
+	 */
+	public long getOverflowCount() {
+		return overflows.get();
+	}
+
+	/**
+	 * @return how many messages were discarded, or merged into a queued one, instead of
+	 *         being queued; less than the overflow count when senders had to wait.
+	 */
+	public long getDropCount() {
+		return drops.get();
+	}
+
+	private void awaitNotFull() {
+		try {
+			while (queue.size() >= capacity) {
+				notFull.await();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private boolean removeOldestBroadcast() {
+		Iterator<Message> it = queue.iterator();
+		while (it.hasNext()) {
+			if (it.next() instanceof Broadcast) {
+				it.remove();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Puts {@code m} in the place of the oldest queued broadcast of its type, merged into it
+	 * when both are {@link CoalescingBroadcast}s, so the queue keeps its order and a collapsed
+	 * broadcast still stands for every one it replaced.
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private boolean replaceOldestOfType(Message m) {
+		if (!(m instanceof Broadcast)) {
+			return false;
+		}
+		boolean replaced = false;
+		for (int i = queue.size(); i > 0; --i) {
+			Message queued = queue.poll();
+			if (!replaced && queued.getClass() == m.getClass()) {
+				queued = queued instanceof CoalescingBroadcast
+						? ((CoalescingBroadcast) queued).coalesce((CoalescingBroadcast) m)
+						: m;
+				replaced = true;
+			}
+			queue.offer(queued);
+		}
+		return replaced;
+	}
+}
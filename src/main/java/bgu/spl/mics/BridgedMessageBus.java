@@ -0,0 +1,508 @@
+package bgu.spl.mics;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A {@link MessageBus} that extends the {@link MessageBusImpl} of its {@link SimulationContext}
+ * to micro-services running in other processes, over {@link Link}s supplied by a subclass.
+ * <p>
+ * Every other process, a peer, is represented on the local bus by a proxy micro-service. When a
+ * local micro-service subscribes to a message type, the peers are told, and their proxies
+ * subscribe to it on their own bus. A proxy forwards what it receives over the link, so routing,
+ * broadcast fan-out and mailboxes all stay the local bus's business. Messages arriving from a
+ * peer are delivered to every local subscriber except that peer's proxy, which keeps them from
+ * bouncing back; peers should therefore form a tree, typically one host and several workers.
+ * <p>
+ * A forwarded event gets a number; the peer answers with that number once its handler
+ * completes the event, and the original event is then completed locally, resolving the
+ * sender's {@link Future}. Only message types the {@link MessageCodec} supports cross a link.
+ * <p>
+ * Creating the bus installs it in the current context, so micro-services created after it
+ * use it. Register, unregister and receiving messages are handled by the local bus alone.
+ */
+public class BridgedMessageBus implements MessageBus {
+	private static final byte SUBSCRIBE = 1;
+	private static final byte READY = 2;
+	private static final byte EVENT = 3;
+	private static final byte BROADCAST = 4;
+	private static final byte COMPLETE = 5;
+	private static final byte CLOSE = 6;
+
+	// Queued behind the messages still to forward when the bus closes
+	private static final Message END = new Broadcast() {
+	};
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	private final SimulationContext context;
+	private final MessageBusImpl local;
+	private final MessageCodec codec;
+	private final List<Peer> peers;
+	// Types some local, non-proxy micro-service subscribed to; sent to every peer that connects
+	private final Set<Class<? extends Message>> subscribedTypes;
+	private volatile CountDownLatch expectedPeers;
+	private volatile Consumer<? super Message> inbound;
+
+	public BridgedMessageBus(MessageCodec codec) {
+		this.codec = codec;
+		context = SimulationContext.current();
+		local = MessageBusImpl.getInstance();
+		peers = new CopyOnWriteArrayList<>();
+		subscribedTypes = ConcurrentHashMap.newKeySet();
+		expectedPeers = new CountDownLatch(0);
+		context.set(MessageBus.class, this);
+	}
+
+	/**
+	 * Starts exchanging messages with the process at the other end of {@code link}.
+	 *
+	 * @param name identifies the peer in thread names and errors.
+	 */
+	final void connect(String name, Link link) {
+		Peer peer;
+		try (SimulationContext.Scope scope = context.bind()) {
+			peer = new Peer(name, link);
+		}
+		peers.add(peer);
+		for (Class<? extends Message> type : subscribedTypes) {
+			peer.sendSubscribe(type);
+		}
+		peer.start();
+		expectedPeers.countDown();
+	}
+
+	/**
+	 * Makes {@link #awaitReady()} first wait for {@code count} peers to connect, for transports
+	 * where the peers connect to this bus rather than the other way round.
+	 */
+	final void expectPeers(int count) {
+		expectedPeers = new CountDownLatch(count);
+	}
+
+	/**
+	 * Tells every peer that the local micro-services have subscribed; call it once they are initialized.
+	 */
+	public void ready() {
+		for (Peer peer : peers) {
+			peer.send(out -> out.put(READY));
+		}
+	}
+
+	/**
+	 * Waits until every connected peer has called {@link #ready()}, so that all their
+	 * subscriptions are in place on this bus, or has disconnected.
+	 */
+	public void awaitReady() throws InterruptedException {
+		expectedPeers.await();
+		for (Peer peer : peers) {
+			peer.ready.await();
+		}
+	}
+
+	/**
+	 * Like {@link #awaitReady()}, but gives up after {@code timeout}.
+	 *
+	 * @return whether every peer is ready.
+	 */
+	public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		if (!expectedPeers.await(timeout, unit)) {
+			return false;
+		}
+		for (Peer peer : peers) {
+			if (!peer.ready.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Hands every message arriving from a peer to {@code listener} before delivering it, on the
+	 * thread receiving from that peer; for state that must add up over all the processes.
+	 *
+	 * @param listener null to stop.
+	 */
+	public void setInboundListener(Consumer<? super Message> listener) {
+		inbound = listener;
+	}
+
+	/**
+	 * Forwards what the proxies still hold, tells the peers this bus is going away and stops.
+	 */
+	public void close() throws InterruptedException {
+		for (Peer peer : peers) {
+			peer.close();
+		}
+	}
+
+	@Override
+	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
+		local.subscribeEvent(type, m);
+		announce(type, m);
+	}
+
+	@Override
+	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
+		local.subscribeBroadcast(type, m);
+		announce(type, m);
+	}
+
+	@Override
+	public <T> void complete(Event<T> e, T result) {
+		local.complete(e, result);
+	}
+
+	@Override
+	public void sendBroadcast(Broadcast b) {
+		local.sendBroadcast(b);
+	}
+
+	@Override
+	public <B extends Broadcast> Topic<B> topic(Class<B> type) {
+		return local.topic(type);
+	}
+
+	@Override
+	public <T> Future<T> sendEvent(Event<T> e) {
+		return local.sendEvent(e);
+	}
+
+	@Override
+	public void register(MicroService m) {
+		local.register(m);
+	}
+
+	@Override
+	public void unregister(MicroService m) {
+		local.unregister(m);
+	}
+
+	@Override
+	public Message awaitMessage(MicroService m) throws InterruptedException {
+		return local.awaitMessage(m);
+	}
+
+	@Override
+	public int awaitMessages(MicroService m, Collection<? super Message> batch, int max) throws InterruptedException {
+		return local.awaitMessages(m, batch, max);
+	}
+
+	private void announce(Class<? extends Message> type, MicroService m) {
+		if (!(m instanceof Proxy) && codec.supports(type) && subscribedTypes.add(type)) {
+			for (Peer peer : peers) {
+				peer.sendSubscribe(type);
+			}
+		}
+	}
+
+	/**
+	 * Stands for a peer on the local bus. Its event loop is driven by the peer's output thread.
+	 */
+	private static final class Proxy extends MicroService {
+		private Proxy(String name) {
+			super(name);
+		}
+
+		@Override
+		protected void initialize() {
+		}
+	}
+
+	/**
+	 * One connected process: its link, its proxy, a thread pumping the proxy's mailbox into the
+	 * link and a thread delivering the frames coming out of it.
+	 */
+	private final class Peer {
+		private final String name;
+		private final Link link;
+		private final Proxy proxy;
+		private final Thread output;
+		private final Thread input;
+		private final CountDownLatch ready;
+		// Forwarded events waiting for the peer to complete them, by number
+		private final ConcurrentHashMap<Long, Event<?>> pending;
+		private final Set<String> remoteTypes;
+		private long nextId;
+		private ByteBuffer scratch;
+		private boolean batching;
+		private volatile boolean closed;
+
+		private Peer(String name, Link link) {
+			this.name = name;
+			this.link = link;
+			proxy = new Proxy("remote:" + name);
+			output = new Thread(this::pump, "bridge-" + name + "-out");
+			input = new Thread(this::receive, "bridge-" + name + "-in");
+			ready = new CountDownLatch(1);
+			pending = new ConcurrentHashMap<>();
+			remoteTypes = ConcurrentHashMap.newKeySet();
+			scratch = ByteBuffer.allocate(4096);
+			local.register(proxy);
+		}
+
+		private void start() {
+			output.setDaemon(true);
+			input.setDaemon(true);
+			output.start();
+			input.start();
+		}
+
+		private void close() throws InterruptedException {
+			Mailbox queue = local.getQueues().get(proxy);
+			if (queue != null && output.isAlive()) {
+				queue.offer(END);
+				output.join(CLOSE_TIMEOUT_MILLIS);
+			}
+			closed = true;
+			output.interrupt();
+			input.interrupt();
+			local.unregister(proxy);
+			try {
+				link.close();
+			}
+			catch (IOException e) {
+				System.err.println("Closing the link to " + name + " failed: " + e);
+			}
+		}
+
+		private void sendSubscribe(Class<? extends Message> type) {
+			send(out -> {
+				out.put(SUBSCRIBE);
+				MessageCodec.putString(out, type.getName());
+			});
+		}
+
+		/**
+		 * Encodes one frame with {@code writer}, growing the buffer until it fits, and sends it.
+		 * Frames to a closed peer are dropped.
+		 */
+		private synchronized void send(Consumer<ByteBuffer> writer) {
+			if (closed) {
+				return;
+			}
+			while (true) {
+				((Buffer) scratch).clear();
+				try {
+					writer.accept(scratch);
+					break;
+				}
+				catch (BufferOverflowException e) {
+					scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+				}
+			}
+			((Buffer) scratch).flip();
+			try {
+				link.send(scratch);
+				if (!batching) {
+					link.flush();
+				}
+			}
+			catch (IOException e) {
+				System.err.println("Lost the link to " + name + ": " + e);
+				closed = true;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * While batching, frames are only handed to the link, which may hold them back until
+		 * batching ends, so a whole batch of forwarded messages can go out in one write.
+		 */
+		private synchronized void setBatching(boolean batching) {
+			this.batching = batching;
+			if (batching || closed) {
+				return;
+			}
+			try {
+				link.flush();
+			}
+			catch (IOException e) {
+				System.err.println("Lost the link to " + name + ": " + e);
+				closed = true;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void forwardEvent(Event<?> e) {
+			long id = ++nextId;
+			pending.put(id, e);
+			send(out -> {
+				out.put(EVENT).putLong(id);
+				codec.encode(e, out);
+			});
+		}
+
+		private void forwardBroadcast(Broadcast b) {
+			send(out -> {
+				out.put(BROADCAST);
+				codec.encode(b, out);
+			});
+		}
+
+		private void sendComplete(long id, Object result) {
+			send(out -> {
+				out.put(COMPLETE).putLong(id);
+				codec.encodeResult(result, out);
+			});
+		}
+
+		private void pump() {
+			try (SimulationContext.Scope scope = context.bind()) {
+				List<Message> batch = new ArrayList<>(MicroService.MAX_BATCH);
+				while (!closed) {
+					try {
+						local.awaitMessages(proxy, batch, MicroService.MAX_BATCH);
+						int end = batch.indexOf(END);
+						if (end >= 0) {
+							batch.subList(end, batch.size()).clear();
+						}
+						setBatching(true);
+						try {
+							proxy.dispatch(batch);
+						}
+						finally {
+							setBatching(false);
+						}
+						if (end >= 0) {
+							send(out -> out.put(CLOSE));
+							return;
+						}
+					}
+					catch (InterruptedException | IllegalStateException e) {
+						// Closed: interrupted, or the proxy was unregistered
+						return;
+					}
+					finally {
+						batch.clear();
+					}
+				}
+			}
+		}
+
+		private void receive() {
+			try (SimulationContext.Scope scope = context.bind()) {
+				while (!closed) {
+					ByteBuffer frame = link.receive();
+					if (!handle(frame)) {
+						break;
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				// Closed locally
+			}
+			catch (IOException | RuntimeException e) {
+				if (!closed) {
+					System.err.println("Lost the link to " + name + ": " + e);
+				}
+			}
+			closed = true;
+			failPending();
+			ready.countDown();
+			// Stops the output thread, and the local bus from queueing for a peer that is gone
+			local.unregister(proxy);
+		}
+
+		// Nobody will answer the events still out there, so their senders get null
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private void failPending() {
+			for (Long id : pending.keySet()) {
+				Event e = pending.remove(id);
+				if (e != null) {
+					local.complete(e, null);
+				}
+			}
+		}
+
+		/**
+		 * @return false once the peer has closed.
+		 */
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private boolean handle(ByteBuffer frame) {
+			byte kind = frame.get();
+			switch (kind) {
+				case SUBSCRIBE:
+					subscribe(MessageCodec.getString(frame));
+					return true;
+				case READY:
+					ready.countDown();
+					return true;
+				case EVENT: {
+					long id = frame.getLong();
+					Event<?> e = (Event<?>) codec.decode(frame);
+					notifyInbound(e);
+					Future<?> future = local.sendEvent(e, s -> s != proxy);
+					if (future == null) {
+						sendComplete(id, null);
+					}
+					else {
+						future.onComplete(result -> sendComplete(id, result));
+					}
+					return true;
+				}
+				case BROADCAST: {
+					Broadcast b = (Broadcast) codec.decode(frame);
+					notifyInbound(b);
+					local.sendBroadcast(b, s -> s != proxy);
+					return true;
+				}
+				case COMPLETE: {
+					Event e = pending.remove(frame.getLong());
+					Object result = codec.decodeResult(frame);
+					if (e != null) {
+						local.complete(e, result);
+					}
+					return true;
+				}
+				case CLOSE:
+					return false;
+				default:
+					throw new IllegalStateException("Unknown frame kind " + kind + " from " + name);
+			}
+		}
+
+		private void notifyInbound(Message m) {
+			Consumer<? super Message> listener = inbound;
+			if (listener != null) {
+				listener.accept(m);
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void subscribe(String typeName) {
+			if (!remoteTypes.add(typeName)) {
+				return;
+			}
+			Class<?> type;
+			try {
+				type = Class.forName(typeName, false, BridgedMessageBus.class.getClassLoader());
+			}
+			catch (ClassNotFoundException e) {
+				System.err.println(name + " subscribed to unknown type " + typeName);
+				return;
+			}
+			if (Event.class.isAssignableFrom(type)) {
+				proxy.subscribeEvent((Class<Event<Object>>) type, this::forwardEvent);
+			}
+			else if (Broadcast.class.isAssignableFrom(type)) {
+				proxy.subscribeBroadcast((Class<Broadcast>) type, this::forwardBroadcast);
+			}
+		}
+	}
+}
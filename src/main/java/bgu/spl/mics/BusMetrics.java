@@ -0,0 +1,216 @@
+package bgu.spl.mics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts the messages going through the {@link MessageBusImpl} and times how long they wait
+ * and how long their callbacks run, per message type.
+ * <p>
+ * Handled messages are counted in stripes, one per micro-service and type, each written only
+ * by its owner's event loop without atomic read-modify-write; they are summed when read, and
+ * folded into {@link LongAdder}s when a service unregisters. Only a random one in
+ * {@link #getSampleInterval()} messages is timed into the {@link LatencyHistogram}s; at full
+ * rate reading the clock for every message would cost more than the bus itself.
+ * <p>
+ * Queue latency is measured for events only: their send time rides along in the
+ * {@link FutureRegistry} entry the bus keeps anyway, while a broadcast is a single object
+ * shared by all its receivers.
+ */
+public class BusMetrics implements BusMetricsMXBean {
+	public static final String OBJECT_NAME = "bgu.spl.mics:type=MessageBus";
+
+	private final Map<MicroService, Mailbox> queues;
+	private final FutureRegistry eventFutures;
+	private final ConcurrentHashMap<Class<?>, TypeMetrics> types;
+	// Per-class cache in front of types, much cheaper to read on every message than a map lookup
+	private final ClassValue<TypeMetrics> typeMetrics;
+	private volatile boolean enabled;
+	private volatile int sampleMask;
+	private volatile ObjectName registeredName;
+
+	private static final class TypeMetrics {
+		private final LongAdder handledByUnregistered = new LongAdder();
+		private final LatencyHistogram queueLatency = new LatencyHistogram();
+		private final LatencyHistogram callbackLatency = new LatencyHistogram();
+
+		private void reset() {
+			queueLatency.reset();
+			callbackLatency.reset();
+		}
+	}
+
+	BusMetrics(Map<MicroService, Mailbox> queues, FutureRegistry eventFutures) {
+		this.queues = queues;
+		this.eventFutures = eventFutures;
+		types = new ConcurrentHashMap<>();
+		typeMetrics = new ClassValue<TypeMetrics>() {
+			@Override
+			protected TypeMetrics computeValue(Class<?> type) {
+				return types.computeIfAbsent(type, k -> new TypeMetrics());
+			}
+		};
+		enabled = true;
+		sampleMask = 63;
+	}
+
+	/**
+	 * Registers this object with the platform MBean server under {@link #OBJECT_NAME}.
+	 */
+	public void registerMBean() throws JMException {
+		registerMBean(null);
+	}
+
+	/**
+	 * Registers this object with the platform MBean server under {@link #OBJECT_NAME}, with a
+	 * {@code simulation} key added when several simulations share the JVM.
+	 *
+	 * @param simulation the name of the simulation, or null for the plain {@link #OBJECT_NAME}.
+	 */
+	public void registerMBean(String simulation) throws JMException {
+		ObjectName name = new ObjectName(simulation == null ? OBJECT_NAME
+				: OBJECT_NAME + ",simulation=" + ObjectName.quote(simulation));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		registeredName = name;
+	}
+
+	/**
+	 * Removes the registration made by {@link #registerMBean(String)}, if any.
+	 */
+	public void unregisterMBean() throws JMException {
+		ObjectName name = registeredName;
+		if (name != null) {
+			registeredName = null;
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public int getSampleInterval() {
+		return sampleMask + 1;
+	}
+
+	@Override
+	public void setSampleInterval(int interval) {
+		if (interval < 1 || Integer.bitCount(interval) != 1) {
+			throw new IllegalArgumentException("sample interval must be a power of two: " + interval);
+		}
+		sampleMask = interval - 1;
+	}
+
+	@Override
+	public Map<String, Long> getHandledCounts() {
+		Map<Class<?>, Long> counts = new HashMap<>();
+		types.forEach((type, t) -> counts.put(type, t.handledByUnregistered.sum()));
+		for (MicroService service : queues.keySet()) {
+			service.forEachHandledCount((type, count) -> counts.merge(type, count, Long::sum));
+		}
+		Map<String, Long> result = new TreeMap<>();
+		counts.forEach((type, count) -> result.merge(nameOf(type), count, Long::sum));
+		return result;
+	}
+
+	@Override
+	public Map<String, Integer> getMailboxDepths() {
+		Map<String, Integer> depths = new TreeMap<>();
+		queues.forEach((service, queue) -> depths.put(service.getName(), queue.size()));
+		return depths;
+	}
+
+	@Override
+	public Map<String, LatencyHistogram> getQueueLatencies() {
+		return collect(t -> t.queueLatency);
+	}
+
+	@Override
+	public Map<String, LatencyHistogram> getCallbackLatencies() {
+		return collect(t -> t.callbackLatency);
+	}
+
+	@Override
+	public void reset() {
+		types.values().forEach(TypeMetrics::reset);
+	}
+
+	/**
+	 * @return the send time to remember for an event, or 0 when disabled or not sampled.
+	 */
+	long messageSent(Message m) {
+		return enabled && isSampled() ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records how long {@code m} waited, if it is an event whose send was timed.
+	 * <p>
+	 * @return the start time of the callback of {@code m}, or 0 when disabled or not sampled.
+	 */
+	long callbackStarting(Message m) {
+		if (!enabled) {
+			return 0;
+		}
+		if (m instanceof Event) {
+			// The sender already picked the sample; its send time is in the registry entry
+			long sent = eventFutures.getSentNanos((Event<?>) m);
+			if (sent == 0) {
+				return 0;
+			}
+			long now = System.nanoTime();
+			of(m.getClass()).queueLatency.record(now - sent);
+			return now;
+		}
+		return isSampled() ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records how long the callback of {@code m} ran, if it was timed.
+	 */
+	void callbackFinished(Message m, long start) {
+		if (start != 0) {
+			of(m.getClass()).callbackLatency.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Keeps the handled counts of {@code m}, which no longer takes messages.
+	 */
+	void serviceUnregistered(MicroService m) {
+		m.forEachHandledCount((type, count) -> of(type).handledByUnregistered.add(count));
+	}
+
+	private boolean isSampled() {
+		return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+	}
+
+	private TypeMetrics of(Class<? extends Message> type) {
+		return typeMetrics.get(type);
+	}
+
+	private <V> Map<String, V> collect(Function<TypeMetrics, V> value) {
+		Map<String, V> result = new TreeMap<>();
+		types.forEach((type, t) -> result.put(nameOf(type), value.apply(t)));
+		return result;
+	}
+
+	private static String nameOf(Class<?> type) {
+		return type.getSimpleName().isEmpty() ? type.getName() : type.getSimpleName();
+	}
+}
@@ -0,0 +1,49 @@
+package bgu.spl.mics;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link BusMetrics}. Message types and services are keyed by their simple
+ * class name and service name respectively; latencies are in microseconds.
+ */
+public interface BusMetricsMXBean {
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return one in how many messages is timed for the latency histograms.
+	 */
+	int getSampleInterval();
+
+	/**
+	 * @param interval a power of two; 1 times every message.
+	 */
+	void setSampleInterval(int interval);
+
+	/**
+	 * @return how many messages of each type had their callback run; poll it for the rates.
+	 */
+	Map<String, Long> getHandledCounts();
+
+	/**
+	 * @return the number of messages currently waiting in each registered service's queue.
+	 */
+	Map<String, Integer> getMailboxDepths();
+
+	/**
+	 * @return per event type, the time from {@code sendEvent} until its callback started.
+	 */
+	Map<String, LatencyHistogram> getQueueLatencies();
+
+	/**
+	 * @return per message type, how long its callbacks ran.
+	 */
+	Map<String, LatencyHistogram> getCallbackLatencies();
+
+	/**
+	 * Clears the latency histograms. The handled counts are cumulative.
+	 */
+	void reset();
+}
@@ -0,0 +1,18 @@
+package bgu.spl.mics;
+
+/**
+ * A {@link Broadcast} whose queued instances may be merged into one when a micro-service
+ * falls behind. When the event loop takes several broadcasts of such a type at once, it hands
+ * the callback a single broadcast built by {@link #coalesce(CoalescingBroadcast)} instead of
+ * running it once per instance.
+ *
+ * @param <B> the concrete broadcast type.
+ */
+public interface CoalescingBroadcast<B extends CoalescingBroadcast<B>> extends Broadcast {
+
+    /**
+     * @param newer a broadcast of the same type that was queued after this one.
+     * @return a broadcast standing for this one followed by {@code newer}.
+     */
+    B coalesce(B newer);
+}
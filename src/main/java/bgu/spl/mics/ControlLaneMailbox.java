@@ -0,0 +1,120 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wraps the data {@link Mailbox} of a micro-service with a lane for {@link ControlMessage}s
+ * that is always read first.
+ * <p>
+ * The owner waits here rather than in the data mailbox, parked until either lane gets a
+ * message, so a control message reaches a blocked owner without going through the data
+ * mailbox and its overflow policy: it is never held up by, nor displaces, nor is dropped
+ * for a full bounded mailbox.
+ * <p>
+ * It also counts the messages offered, which the bus compares with the number its owner
+ * handled to tell whether the owner has work left, see {@link MessageBusImpl#isQuiescent}.
+ */
+final class ControlLaneMailbox implements Mailbox {
+	private final Mailbox data;
+	private final ConcurrentLinkedQueue<Message> control;
+	private final AtomicLong offered;
+	// Taken from by the owner only, to poll the data mailbox
+	private final ArrayList<Message> next;
+	private volatile Thread waiter;
+
+	ControlLaneMailbox(Mailbox data) {
+		this.data = data;
+		control = new ConcurrentLinkedQueue<>();
+		offered = new AtomicLong();
+		next = new ArrayList<>(1);
+	}
+
+	@Override
+	public void offer(Message m) {
+		// Counted before it can be taken, so it is never handled before it is counted
+		offered.incrementAndGet();
+		if (m instanceof ControlMessage && ((ControlMessage) m).isControl()) {
+			control.offer(m);
+		}
+		else {
+			data.offer(m);
+		}
+		Thread w = waiter;
+		if (w != null) {
+			LockSupport.unpark(w);
+		}
+	}
+
+	@Override
+	public Message take() throws InterruptedException {
+		Message m = poll();
+		if (m != null) {
+			return m;
+		}
+		waiter = Thread.currentThread();
+		try {
+			// Re-check after publishing ourselves as the waiter so a concurrent offer cannot be missed
+			while ((m = poll()) == null) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				LockSupport.park(this);
+			}
+			return m;
+		}
+		finally {
+			waiter = null;
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Message> batch, int max) {
+		int count = 0;
+		Message m;
+		while (count < max && (m = control.poll()) != null) {
+			batch.add(m);
+			++count;
+		}
+		if (count < max) {
+			count += data.drainTo(batch, max - count);
+		}
+		return count;
+	}
+
+	@Override
+	public int size() {
+		return control.size() + data.size();
+	}
+
+	/**
+	 * @return the number of messages offered and not dropped by a bounded data mailbox.
+	 */
+	long getAccepted() {
+		long accepted = offered.get();
+		return data instanceof BoundedMailbox ? accepted - ((BoundedMailbox) data).getDropCount() : accepted;
+	}
+
+	/**
+	 * @return the data mailbox this lane was put in front of.
+	 */
+	Mailbox getDataMailbox() {
+		return data;
+	}
+
+	private Message poll() {
+		Message m = control.poll();
+		if (m != null) {
+			return m;
+		}
+		if (data.drainTo(next, 1) == 0) {
+			return null;
+		}
+		m = next.get(0);
+		next.clear();
+		return m;
+	}
+}
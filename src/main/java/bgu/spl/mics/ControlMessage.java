@@ -0,0 +1,17 @@
+package bgu.spl.mics;
+
+/**
+ * Marks messages that steer the micro-services rather than carry data, such as crash and
+ * shutdown notices. The message-bus delivers them on a separate lane that the receiving
+ * micro-service always reads before its queued data messages.
+ */
+public interface ControlMessage extends Message {
+
+    /**
+     * @return true if this instance should overtake the messages already queued for its
+     *         receivers; false to deliver it in order like any other message.
+     */
+    default boolean isControl() {
+        return true;
+    }
+}
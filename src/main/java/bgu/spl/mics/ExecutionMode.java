@@ -0,0 +1,52 @@
+package bgu.spl.mics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The kind of thread each {@link MicroService} runs on.
+ * <p>
+ * {@link #VIRTUAL} needs a Java 21 runtime. The code base itself still targets Java 8, so the
+ * virtual thread builder is looked up reflectively. Waiting in {@link MessageBus#awaitMessage}
+ * and {@link Future#get()} only parks through {@link java.util.concurrent.locks.LockSupport},
+ * never inside a {@code synchronized} block, so a waiting service does not pin its carrier.
+ */
+public enum ExecutionMode {
+	/** One platform thread per micro-service. */
+	PLATFORM,
+	/** One virtual thread per micro-service. */
+	VIRTUAL,
+	/**
+	 * Micro-services are actors sharing the threads of an {@link ActorScheduler}; the ones
+	 * that block between messages still get a platform thread from {@link #threadFactory()}.
+	 */
+	ACTOR;
+
+	/**
+	 * @param name the configured mode, case-insensitive; {@code null} means {@link #PLATFORM}.
+	 */
+	public static ExecutionMode fromConfig(String name) {
+		return name == null ? PLATFORM : valueOf(name.toUpperCase());
+	}
+
+	/**
+	 * @return a factory creating threads of this mode; virtual ones are named "service-0", "service-1", ...
+	 * @throws UnsupportedOperationException if the running JVM has no virtual threads.
+	 */
+	public ThreadFactory threadFactory() {
+		if (this != VIRTUAL) {
+			return Executors.defaultThreadFactory();
+		}
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Method name = builderType.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "service-", 0L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads need Java 21 or newer", e);
+		}
+	}
+}
@@ -1,27 +1,80 @@
 package bgu.spl.mics;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * A Future object represents a promised result - an object that will
  * eventually be resolved to hold a result of some operation. The class allows
  * Retrieving the result once it is available.
  * 
- * Only private methods may be added to this class.
  * No public constructor is allowed except for the empty constructor.
+ * <p>
+ * The state is a single atomic reference: either the stack of callbacks registered so far or,
+ * once resolved, the result. Nothing takes a lock, and the blocking getters park through
+ * {@link LockSupport}, so a virtual thread blocked in {@link #get()} does not pin its carrier.
+ * A blocking getter registers a {@link Waiter} that it gives up when it returns, and a later
+ * getter takes over a given-up waiter, so repeated timed waits do not pile up callbacks.
  */
 public class Future<T> {
-	private boolean isDone;
-	private T result;
-	private final Object lock;
+	private final AtomicReference<Object> state;
+	private volatile Runnable onFirstCallback;
+
+	/**
+	 * One registered callback; callbacks form a stack, newest first.
+	 */
+	private static final class Callback {
+		private final Consumer<Object> action;
+		private final Callback next;
+
+		private Callback(Consumer<Object> action, Callback next) {
+			this.action = action;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * The callback of a blocked getter: unparks the thread it holds, or nothing once that
+	 * thread gave it up.
+	 */
+	private static final class Waiter extends AtomicReference<Thread> implements Consumer<Object> {
+		private Waiter(Thread thread) {
+			super(thread);
+		}
+
+		@Override
+		public void accept(Object result) {
+			Thread thread = get();
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	/**
+	 * The final state, boxed so that a null result can be told apart from "pending".
+	 */
+	private static final class Resolved {
+		private final Object result;
+
+		private Resolved(Object result) {
+			this.result = result;
+		}
+	}
 	
 	/**
 	 * This should be the the only public constructor in this class.
 	 */
 	public Future() {
-		isDone = false;
-		result = null;
-		lock = new Object();
+		state = new AtomicReference<>();
 	}
 	
 	/**
@@ -33,40 +86,44 @@ public class Future<T> {
      * 	       
      */
 	public T get() {
-		synchronized(lock) {
+		if (!isDone()) {
+			Waiter waiter = addWaiter();
 			try {
 				while (!isDone()) {
-				    lock.wait();
+					LockSupport.park(this);
+					if (Thread.currentThread().isInterrupted()) {
+						return null;
+					}
 				}
-				return result;	
-			}
-			catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				return null;
+			} finally {
+				waiter.compareAndSet(Thread.currentThread(), null);
 			}
 		}
+		return result();
 	}
 	
 	/**
      * Resolves the result of this Future object.
+     * <p>
+     * The callbacks registered so far run on the calling thread, in registration order.
      */
 	public void resolve (T result) {
-		synchronized(lock) {
-			if (!isDone()) {
-				this.result = result;
-				this.isDone = true;
-				lock.notifyAll();
+		Resolved resolved = new Resolved(result);
+		Object current;
+		do {
+			current = state.get();
+			if (current instanceof Resolved) {
+				return;
 			}
-		}
+		} while (!state.compareAndSet(current, resolved));
+		runCallbacks((Callback) current, result);
 	}
 	
 	/**
      * @return true if this object has been resolved, false otherwise
      */
 	public boolean isDone() {
-		synchronized(lock) {
-			return isDone;
-		}
+		return state.get() instanceof Resolved;
 	}
 	
 	/**
@@ -81,17 +138,156 @@ public class Future<T> {
      *         elapsed, return null.
      */
 	public T get(long timeout, TimeUnit unit) {
-		synchronized(lock) {
+		if (!isDone()) {
+			Waiter waiter = addWaiter();
 			try {
-				if (!isDone()) {
-					unit.timedWait(lock, timeout);
-		        }
-			}			
-			catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				return null;
+				long deadline = System.nanoTime() + unit.toNanos(timeout);
+				long nanos;
+				while (!isDone() && (nanos = deadline - System.nanoTime()) > 0) {
+					LockSupport.parkNanos(this, nanos);
+					if (Thread.currentThread().isInterrupted()) {
+						return null;
+					}
+				}
+			} finally {
+				waiter.compareAndSet(Thread.currentThread(), null);
+			}
+		}
+		return result();
+	}
+
+	/**
+	 * Registers {@code callback} to be called with the result without blocking.
+	 * <p>
+	 * If this Future is already resolved the callback runs right away on the calling thread,
+	 * otherwise it runs on the thread that resolves it. Callbacks should be short and must
+	 * not throw, since they run inside whichever micro-service completes the event.
+	 */
+	@SuppressWarnings("unchecked")
+	public void onComplete(Consumer<? super T> callback) {
+		Runnable pin = onFirstCallback;
+		if (pin != null) {
+			onFirstCallback = null;
+			pin.run();
+		}
+		Consumer<Object> action = (Consumer<Object>) callback;
+		Object current;
+		do {
+			current = state.get();
+			if (current instanceof Resolved) {
+				action.accept(((Resolved) current).result);
+				return;
+			}
+		} while (!state.compareAndSet(current, new Callback(action, (Callback) current)));
+	}
+
+	/**
+	 * @return a {@link CompletionStage} completed with the result of this Future.
+	 */
+	public CompletionStage<T> toCompletionStage() {
+		CompletableFuture<T> stage = new CompletableFuture<>();
+		onComplete(stage::complete);
+		return stage;
+	}
+
+	/**
+	 * @return a Future resolved with the result of {@code stage}, or with null if
+	 *         {@code stage} completes exceptionally.
+	 */
+	public static <T> Future<T> fromCompletionStage(CompletionStage<? extends T> stage) {
+		Future<T> future = new Future<>();
+		stage.whenComplete((result, failure) -> future.resolve(failure == null ? result : null));
+		return future;
+	}
+
+	/**
+	 * @return a Future resolved, once all of {@code futures} are, with their results in the
+	 *         same order.
+	 */
+	public static <T> Future<List<T>> allOf(List<? extends Future<? extends T>> futures) {
+		Future<List<T>> all = new Future<>();
+		int count = futures.size();
+		if (count == 0) {
+			all.resolve(new ArrayList<>());
+			return all;
+		}
+		AtomicReferenceArray<T> results = new AtomicReferenceArray<>(count);
+		AtomicInteger remaining = new AtomicInteger(count);
+		for (int i = 0; i < count; ++i) {
+			int index = i;
+			futures.get(i).onComplete(result -> {
+				results.set(index, result);
+				if (remaining.decrementAndGet() == 0) {
+					List<T> list = new ArrayList<>(count);
+					for (int j = 0; j < count; ++j) {
+						list.add(results.get(j));
+					}
+					all.resolve(list);
+				}
+			});
+		}
+		return all;
+	}
+
+	/**
+	 * @return a Future resolved with the result of whichever of {@code futures} is resolved first.
+	 */
+	public static <T> Future<T> anyOf(List<? extends Future<? extends T>> futures) {
+		Future<T> any = new Future<>();
+		for (Future<? extends T> future : futures) {
+			future.onComplete(any::resolve);
+		}
+		return any;
+	}
+
+	/**
+	 * Runs {@code pin} once, when the first callback is registered. The message-bus uses it to
+	 * keep a Future that someone listens to reachable until its event is completed.
+	 */
+	void setOnFirstCallback(Runnable pin) {
+		onFirstCallback = pin;
+	}
+
+	/**
+	 * @return the number of callbacks registered and not run yet.
+	 */
+	int callbackCount() {
+		Object current = state.get();
+		int count = 0;
+		for (Callback c = current instanceof Callback ? (Callback) current : null; c != null; c = c.next) {
+			++count;
+		}
+		return count;
+	}
+
+	// Takes over a waiter given up by an earlier getter, or registers a new one
+	private Waiter addWaiter() {
+		Thread thread = Thread.currentThread();
+		Object current = state.get();
+		for (Callback c = current instanceof Callback ? (Callback) current : null; c != null; c = c.next) {
+			if (c.action instanceof Waiter && ((Waiter) c.action).compareAndSet(null, thread)) {
+				return (Waiter) c.action;
 			}
-			return result;			
+		}
+		Waiter waiter = new Waiter(thread);
+		onComplete(waiter);
+		return waiter;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T result() {
+		Object current = state.get();
+		return current instanceof Resolved ? (T) ((Resolved) current).result : null;
+	}
+
+	private static void runCallbacks(Callback top, Object result) {
+		// The stack holds the newest callback first; reverse it to run them in registration order
+		Callback reversed = null;
+		for (Callback c = top; c != null; c = c.next) {
+			reversed = new Callback(c.action, reversed);
+		}
+		for (Callback c = reversed; c != null; c = c.next) {
+			c.action.accept(result);
 		}
 	}
 
@@ -0,0 +1,169 @@
+package bgu.spl.mics;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Maps every in-flight {@link Event} to the {@link Future} handed back to its sender.
+ * <p>
+ * An entry is dropped as soon as the event is completed, or once the sender no longer
+ * holds its Future (the Future is only weakly reachable from here). Senders that ignore
+ * the result of {@code sendEvent} therefore never leave anything behind. A Future that has
+ * callbacks registered is held strongly instead, since its sender may rely on the callbacks alone.
+ * <p>
+ * An entry may also hold the load counter of the service its event was delivered to; the
+ * counter is decremented whenever the entry goes, so it only counts the events still tracked.
+ */
+public class FutureRegistry {
+	private final ConcurrentHashMap<Event<?>, FutureReference> futures;
+	private final ReferenceQueue<Future<?>> released;
+	private final AtomicLong completedEvictions;
+	private final AtomicLong releasedEvictions;
+
+	/**
+	 * Weak handle to a Future that remembers its event so the entry can be expunged
+	 * once the Future has been garbage collected.
+	 */
+	private static final class FutureReference extends WeakReference<Future<?>> {
+		private final Event<?> event;
+		private final long sentNanos;
+		private final AtomicInteger load;
+		private volatile Future<?> pinned;
+
+		private FutureReference(Event<?> event, Future<?> future, long sentNanos, AtomicInteger load,
+								ReferenceQueue<Future<?>> queue) {
+			super(future, queue);
+			this.event = event;
+			this.sentNanos = sentNanos;
+			this.load = load;
+		}
+
+		private void release() {
+			if (load != null) {
+				load.decrementAndGet();
+			}
+		}
+	}
+
+	public FutureRegistry() {
+		futures = new ConcurrentHashMap<>();
+		released = new ReferenceQueue<>();
+		completedEvictions = new AtomicLong();
+		releasedEvictions = new AtomicLong();
+	}
+
+	/**
+	 * Associates {@code future} with {@code e} until the event is completed
+	 * or the future is no longer referenced by its sender.
+	 */
+	public <T> void put(Event<T> e, Future<T> future) {
+		put(e, future, 0);
+	}
+
+	/**
+	 * Like {@link #put(Event, Future)}, also remembering when {@code e} was sent.
+	 * <p>
+	 * @param sentNanos the {@link System#nanoTime()} of the send, or 0 if not measured.
+	 */
+	public <T> void put(Event<T> e, Future<T> future, long sentNanos) {
+		put(e, future, sentNanos, null);
+	}
+
+	/**
+	 * Like {@link #put(Event, Future, long)}, also incrementing {@code load} until the entry
+	 * is removed, discarded or released.
+	 * <p>
+	 * @param load the counter of outstanding events of the receiving service, or null.
+	 */
+	<T> void put(Event<T> e, Future<T> future, long sentNanos, AtomicInteger load) {
+		expunge();
+		if (load != null) {
+			load.incrementAndGet();
+		}
+		FutureReference ref = new FutureReference(e, future, sentNanos, load, released);
+		future.setOnFirstCallback(() -> ref.pinned = future);
+		FutureReference replaced = futures.put(e, ref);
+		if (replaced != null) {
+			replaced.release();
+		}
+	}
+
+	/**
+	 * Removes the entry of a completed event.
+	 * <p>
+	 * @return the Future of {@code e}, or null if it was never registered,
+	 *         already completed, or dropped by its sender.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Future<T> remove(Event<T> e) {
+		FutureReference ref = futures.remove(e);
+		if (ref == null) {
+			return null;
+		}
+		ref.release();
+		completedEvictions.incrementAndGet();
+		return (Future<T>) ref.get();
+	}
+
+	/**
+	 * Drops the entry of an event that could not be delivered, without counting it as an eviction.
+	 */
+	public void discard(Event<?> e) {
+		FutureReference ref = futures.remove(e);
+		if (ref != null) {
+			ref.release();
+		}
+	}
+
+	/**
+	 * @return the send time given to {@link #put(Event, Future, long)} for {@code e}, or 0 if
+	 *         {@code e} is not tracked or its send time was not measured.
+	 */
+	public long getSentNanos(Event<?> e) {
+		FutureReference ref = futures.get(e);
+		return ref == null ? 0 : ref.sentNanos;
+	}
+
+	/**
+	 * @return the number of events whose Future is still tracked.
+	 */
+	public int size() {
+		expunge();
+		return futures.size();
+	}
+
+	/**
+	 * @return the number of entries removed because their event was completed.
+	 */
+	public long getCompletedEvictions() {
+		return completedEvictions.get();
+	}
+
+	/**
+	 * @return the number of entries removed because the sender let go of the Future.
+	 */
+	public long getReleasedEvictions() {
+		expunge();
+		return releasedEvictions.get();
+	}
+
+	/**
+	 * @return the total number of entries removed so far.
+	 */
+	public long getEvictions() {
+		return getCompletedEvictions() + getReleasedEvictions();
+	}
+
+	private void expunge() {
+		FutureReference ref;
+		while ((ref = (FutureReference) released.poll()) != null) {
+			if (futures.remove(ref.event, ref)) {
+				ref.release();
+				releasedEvictions.incrementAndGet();
+			}
+		}
+	}
+}
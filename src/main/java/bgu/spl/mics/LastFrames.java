@@ -11,18 +11,17 @@ public class LastFrames {
 
 	private final ConcurrentHashMap<String, LinkedHashMap<String ,Object>> lastCamerasFrame;
 	private final ConcurrentHashMap<String, List<TrackedObject>> lastLiDarWorkerTrackersFrame;
-    
-	private static class SingletonHolder {
-		private static LastFrames instance = new LastFrames();
-	}
-	
+
 	private LastFrames() {
 	    lastCamerasFrame = new ConcurrentHashMap<>();
 		lastLiDarWorkerTrackersFrame = new ConcurrentHashMap<>();
 	}
 
+	/**
+	 * @return the instance of the {@link SimulationContext} bound to the calling thread.
+	 */
 	public static LastFrames getInstance() {
-		return SingletonHolder.instance;
+		return SimulationContext.current().get(LastFrames.class, LastFrames::new);
 	}
 
 	public void setLastCameraFrame(String name, List<DetectedObject> detectedObjects, int time) {
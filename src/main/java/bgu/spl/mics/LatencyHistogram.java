@@ -0,0 +1,124 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with fixed, preallocated buckets.
+ * <p>
+ * Every power of two nanoseconds is split into four buckets, so a reported percentile is at
+ * most 25% above the true value. Buckets are {@link LongAdder}s: concurrent recorders hit
+ * different cells instead of contending on one counter, and recording never allocates.
+ */
+public class LatencyHistogram {
+	// Durations from 2^40 ns (about 18 minutes) on all land in the last bucket
+	private static final int MAX_EXPONENT = 40;
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = (MAX_EXPONENT - 1) * SUB_BUCKETS;
+
+	private final LongAdder[] buckets;
+	private final LongAdder count;
+	private final LongAdder total;
+	private final LongAccumulator max;
+
+	public LatencyHistogram() {
+		buckets = new LongAdder[BUCKETS];
+		for (int i = 0; i < BUCKETS; ++i) {
+			buckets[i] = new LongAdder();
+		}
+		count = new LongAdder();
+		total = new LongAdder();
+		max = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * @param nanos the duration to add; negative values count as 0.
+	 */
+	public void record(long nanos) {
+		long value = Math.max(nanos, 0);
+		buckets[bucketOf(value)].increment();
+		count.increment();
+		total.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * @return the number of recorded durations.
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	public double getMeanMicros() {
+		long n = count.sum();
+		return n == 0 ? 0 : total.sum() / (n * 1000.0);
+	}
+
+	public double getP50Micros() {
+		return percentileMicros(0.50);
+	}
+
+	public double getP99Micros() {
+		return percentileMicros(0.99);
+	}
+
+	public double getMaxMicros() {
+		return max.get() / 1000.0;
+	}
+
+	/**
+	 * @param fraction between 0 and 1, e.g. 0.999.
+	 * @return the upper bound of the bucket holding that fraction of the recorded durations.
+	 */
+	public double percentileMicros(double fraction) {
+		long[] counts = new long[BUCKETS];
+		long n = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			counts[i] = buckets[i].sum();
+			n += counts[i];
+		}
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(fraction * n);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			seen += counts[i];
+			if (seen >= Math.max(rank, 1)) {
+				return Math.min(upperBound(i), max.get()) / 1000.0;
+			}
+		}
+		return max.get() / 1000.0;
+	}
+
+	public void reset() {
+		for (LongAdder bucket : buckets) {
+			bucket.reset();
+		}
+		count.reset();
+		total.reset();
+		max.reset();
+	}
+
+	private static int bucketOf(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent >= MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		// The two bits after the leading one pick the quarter of [2^exponent, 2^(exponent+1))
+		int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return (exponent - 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + 1;
+		int sub = bucket % SUB_BUCKETS;
+		return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+	}
+}
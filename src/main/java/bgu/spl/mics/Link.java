@@ -0,0 +1,31 @@
+package bgu.spl.mics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A two-way connection carrying byte frames between a {@link BridgedMessageBus} and the bus
+ * of one other process.
+ */
+interface Link extends Closeable {
+
+	/**
+	 * Sends the bytes of {@code frame} between its position and limit as one frame, or queues
+	 * it until {@link #flush()}. Called by one thread at a time.
+	 */
+	void send(ByteBuffer frame) throws IOException, InterruptedException;
+
+	/**
+	 * Sends the frames queued by {@link #send}. Called by one thread at a time.
+	 */
+	default void flush() throws IOException, InterruptedException {
+	}
+
+	/**
+	 * Waits for the next frame. Called by a single thread.
+	 *
+	 * @return the frame's bytes between position and limit, valid until the next call.
+	 */
+	ByteBuffer receive() throws IOException, InterruptedException;
+}
@@ -0,0 +1,35 @@
+package bgu.spl.mics;
+
+import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The default {@link Mailbox}: an unbounded {@link LinkedBlockingQueue}.
+ */
+public class LinkedMailbox implements Mailbox {
+	private final LinkedBlockingQueue<Message> queue;
+
+	public LinkedMailbox() {
+		queue = new LinkedBlockingQueue<>();
+	}
+
+	@Override
+	public void offer(Message m) {
+		queue.offer(m);
+	}
+
+	@Override
+	public Message take() throws InterruptedException {
+		return queue.take();
+	}
+
+	@Override
+	public int drainTo(Collection<? super Message> batch, int max) {
+		return queue.drainTo(batch, max);
+	}
+
+	@Override
+	public int size() {
+		return queue.size();
+	}
+}
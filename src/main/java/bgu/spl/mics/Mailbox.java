@@ -0,0 +1,37 @@
+package bgu.spl.mics;
+
+import java.util.Collection;
+
+/**
+ * The message queue the {@link MessageBus} allocates for a registered {@link MicroService}.
+ * Any number of threads may add messages, but only the owning micro-service takes them.
+ */
+public interface Mailbox {
+
+	/**
+	 * Adds {@code m} to the end of this mailbox. This method must be non-blocking.
+	 * <p>
+	 * @param m the message to add.
+	 */
+	void offer(Message m);
+
+	/**
+	 * Takes the next message, waiting until one becomes available.
+	 * <p>
+	 * @return the next message in this mailbox.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	Message take() throws InterruptedException;
+
+	/**
+	 * Moves up to {@code max} available messages into {@code batch} without waiting.
+	 * <p>
+	 * @return the number of messages moved.
+	 */
+	int drainTo(Collection<? super Message> batch, int max);
+
+	/**
+	 * @return the number of messages currently waiting in this mailbox.
+	 */
+	int size();
+}
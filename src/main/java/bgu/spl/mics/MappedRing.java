@@ -0,0 +1,268 @@
+package bgu.spl.mics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer single-consumer queue of byte frames in a memory-mapped file, so two
+ * processes on one host can exchange frames without a system call per frame.
+ * <p>
+ * The file starts with a header holding the capacity and the write and read positions, each
+ * on a cache line of its own, followed by the data area. A frame is stored as its length and
+ * its bytes, 4-byte aligned, and never wraps: if it does not fit before the end of the data
+ * area, the rest of the area is marked as padding and the frame goes to the start.
+ * <p>
+ * The writer publishes a frame by storing the new write position after the frame's bytes,
+ * and the reader frees it by storing the new read position after reading them. The order of
+ * those stores is what the other process relies on, so they are separated by release and
+ * acquire fences.
+ */
+final class MappedRing implements Closeable {
+	private static final int CAPACITY_OFFSET = 0;
+	private static final int WRITE_OFFSET = 64;
+	private static final int READ_OFFSET = 128;
+	private static final int HEADER = 192;
+	private static final int PADDING = -1;
+
+	// VarHandle's fences need Java 9 and Unsafe's are not public API, so whichever exists is used
+	private static final MethodHandle RELEASE_FENCE = fence("releaseFence", "storeFence");
+	private static final MethodHandle ACQUIRE_FENCE = fence("acquireFence", "loadFence");
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	// Views for the bulk copies of the writer and the reader, reused to avoid an allocation per frame
+	private final ByteBuffer writeView;
+	private final ByteBuffer readView;
+	private final int capacity;
+	// Positions only grow; a position modulo the capacity is an offset in the data area
+	private long writePosition;
+	private long readPosition;
+	// End of the frame last returned by poll(), freed on the next call
+	private long pendingRead;
+
+	private MappedRing(Path file, FileChannel channel, MappedByteBuffer buffer) {
+		this.file = file;
+		this.channel = channel;
+		this.buffer = buffer;
+		writeView = buffer.duplicate();
+		readView = buffer.duplicate();
+		capacity = buffer.getInt(CAPACITY_OFFSET);
+		writePosition = buffer.getLong(WRITE_OFFSET);
+		readPosition = buffer.getLong(READ_OFFSET);
+		pendingRead = readPosition;
+	}
+
+	/**
+	 * Creates an empty ring at {@code file}, replacing any existing one. The file is prepared
+	 * under a temporary name and moved into place, so {@link #open} never sees it half-written.
+	 *
+	 * @param capacity the size of the data area in bytes, a power of two.
+	 */
+	static MappedRing create(Path file, int capacity) throws IOException {
+		if (capacity < 64 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of two of at least 64, not " + capacity);
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + capacity);
+			header.putInt(CAPACITY_OFFSET, capacity);
+			header.force();
+		}
+		Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		return open(file);
+	}
+
+	/**
+	 * Maps the ring another process created at {@code file}.
+	 */
+	static MappedRing open(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			return new MappedRing(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the largest frame this ring accepts.
+	 */
+	int maxFrameSize() {
+		return capacity / 2 - Integer.BYTES;
+	}
+
+	/**
+	 * Appends the bytes of {@code frame} between its position and limit, if there is room.
+	 * Only one thread may write.
+	 *
+	 * @return false, leaving the ring unchanged, if the reader has not freed enough space yet.
+	 */
+	boolean offer(ByteBuffer frame) {
+		int length = frame.remaining();
+		if (length > maxFrameSize()) {
+			throw new IllegalArgumentException("frame of " + length + " bytes exceeds " + maxFrameSize());
+		}
+		int size = align(Integer.BYTES + length);
+		int offset = (int) (writePosition & (capacity - 1));
+		int tail = capacity - offset;
+		int needed = tail < size ? tail + size : size;
+		long read = buffer.getLong(READ_OFFSET);
+		acquireFence();
+		if (writePosition + needed - read > capacity) {
+			return false;
+		}
+		if (tail < size) {
+			buffer.putInt(HEADER + offset, PADDING);
+			writePosition += tail;
+			offset = 0;
+		}
+		buffer.putInt(HEADER + offset, length);
+		((Buffer) writeView).position(HEADER + offset + Integer.BYTES);
+		writeView.put(frame);
+		writePosition += size;
+		releaseFence();
+		buffer.putLong(WRITE_OFFSET, writePosition);
+		return true;
+	}
+
+	/**
+	 * Appends {@code frame}, waiting for the reader to free space if needed.
+	 */
+	void write(ByteBuffer frame) throws InterruptedException {
+		for (int idle = 0; !offer(frame); ++idle) {
+			backOff(idle);
+		}
+	}
+
+	/**
+	 * Frees the frame returned by the previous call and returns the next one, if any.
+	 * Only one thread may read.
+	 *
+	 * @return a buffer holding the frame's bytes between its position and limit, valid until
+	 *         the next call; null if the ring is empty.
+	 */
+	ByteBuffer poll() {
+		if (pendingRead != readPosition) {
+			readPosition = pendingRead;
+			releaseFence();
+			buffer.putLong(READ_OFFSET, readPosition);
+		}
+		long written = buffer.getLong(WRITE_OFFSET);
+		acquireFence();
+		if (written == readPosition) {
+			return null;
+		}
+		int offset = (int) (readPosition & (capacity - 1));
+		int length = buffer.getInt(HEADER + offset);
+		if (length == PADDING) {
+			readPosition += capacity - offset;
+			offset = 0;
+			length = buffer.getInt(HEADER);
+		}
+		pendingRead = readPosition + align(Integer.BYTES + length);
+		// Through Buffer: compiled on a newer JDK, ByteBuffer's own overrides would not link on Java 8
+		((Buffer) readView).limit(HEADER + offset + Integer.BYTES + length);
+		((Buffer) readView).position(HEADER + offset + Integer.BYTES);
+		return readView;
+	}
+
+	/**
+	 * Like {@link #poll()}, but waits for a frame.
+	 */
+	ByteBuffer take() throws InterruptedException {
+		ByteBuffer frame;
+		for (int idle = 0; (frame = poll()) == null; ++idle) {
+			backOff(idle);
+		}
+		return frame;
+	}
+
+	/**
+	 * Closes the file and, if {@code delete} is set, removes it. The mapping itself stays valid
+	 * until the buffer is garbage collected.
+	 */
+	void close(boolean delete) throws IOException {
+		channel.close();
+		if (delete) {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		close(false);
+	}
+
+	private static int align(int size) {
+		return (size + 3) & ~3;
+	}
+
+	// Spins briefly for low latency, then yields, then sleeps so an idle ring costs no CPU
+	private static void backOff(int idle) throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+		if (idle < 16) {
+			return;
+		}
+		if (idle < 64) {
+			Thread.yield();
+		}
+		else {
+			LockSupport.parkNanos(50_000);
+		}
+	}
+
+	private static void releaseFence() {
+		try {
+			RELEASE_FENCE.invokeExact();
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void acquireFence() {
+		try {
+			ACQUIRE_FENCE.invokeExact();
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle fence(String varHandleMethod, String unsafeMethod) {
+		MethodType type = MethodType.methodType(void.class);
+		try {
+			return MethodHandles.publicLookup().findStatic(Class.forName("java.lang.invoke.VarHandle"), varHandleMethod, type);
+		}
+		catch (ReflectiveOperationException e) {
+			try {
+				Class<?> unsafeType = Class.forName("sun.misc.Unsafe");
+				Field instance = unsafeType.getDeclaredField("theUnsafe");
+				instance.setAccessible(true);
+				return MethodHandles.lookup().findVirtual(unsafeType, unsafeMethod, type).bindTo(instance.get(null));
+			}
+			catch (ReflectiveOperationException unavailable) {
+				throw new ExceptionInInitializerError(unavailable);
+			}
+		}
+	}
+}
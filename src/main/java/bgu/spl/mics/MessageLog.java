@@ -0,0 +1,256 @@
+package bgu.spl.mics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * An append-only binary log of the messages sent on a bus, for re-running part of a simulation
+ * without the micro-services that produced its input. {@link Writer#record} is meant to be
+ * installed with {@link MessageBusImpl#setRecorder}; a {@link Reader} gives the messages back
+ * in the order they were sent.
+ * <p>
+ * The log starts with a magic number. A message type gets a number the first time it is
+ * recorded, in a type record holding its class name; every message record then holds the tick
+ * the message was sent at, the number of its type and its {@link MessageCodec} encoding.
+ */
+public final class MessageLog {
+	private static final int MAGIC = 0x4D534731; // "MSG1"
+	private static final byte TYPE = 1;
+	private static final byte MESSAGE = 2;
+
+	private MessageLog() {
+	}
+
+	/**
+	 * Appends messages to a new log file. Writes are buffered until the buffer fills or the
+	 * writer is closed.
+	 */
+	public static final class Writer implements Closeable {
+		private static final int BUFFER_SIZE = 64 * 1024;
+
+		private final FileChannel channel;
+		private final MessageCodec codec;
+		private final ToIntFunction<? super Message> clock;
+		private final Map<Class<? extends Message>, Integer> types;
+		private ByteBuffer buffer;
+		// Holds the encoding of one message
+		private ByteBuffer scratch;
+		private int tick;
+		private IOException failure;
+
+		/**
+		 * @param clock returns the tick a message starts, or -1 for messages that do not move
+		 *              the clock; every message is recorded with the last tick started.
+		 */
+		public Writer(Path file, MessageCodec codec, ToIntFunction<? super Message> clock) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.codec = codec;
+			this.clock = clock;
+			types = new HashMap<>();
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			scratch = ByteBuffer.allocate(4096);
+			buffer.putInt(MAGIC);
+		}
+
+		/**
+		 * Appends {@code m}, unless the codec does not support its type. A write error stops
+		 * the recording and is thrown by {@link #close()}.
+		 */
+		public synchronized void record(Message m) {
+			Class<? extends Message> type = m.getClass();
+			if (failure != null || !codec.supports(type)) {
+				return;
+			}
+			int started = clock.applyAsInt(m);
+			if (started >= 0) {
+				tick = started;
+			}
+			try {
+				Integer number = types.get(type);
+				if (number == null) {
+					number = types.size();
+					types.put(type, number);
+					byte[] name = type.getName().getBytes(StandardCharsets.UTF_8);
+					reserve(1 + 2 + 4 + name.length);
+					buffer.put(TYPE).putShort(number.shortValue());
+					MessageCodec.putString(buffer, type.getName());
+				}
+				encode(m);
+				reserve(1 + 4 + 2 + 4 + scratch.remaining());
+				buffer.put(MESSAGE).putInt(tick).putShort(number.shortValue()).putInt(scratch.remaining()).put(scratch);
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		private void encode(Message m) {
+			while (true) {
+				((Buffer) scratch).clear();
+				try {
+					codec.encode(m, scratch);
+					((Buffer) scratch).flip();
+					return;
+				}
+				catch (BufferOverflowException e) {
+					scratch = ByteBuffer.allocate(2 * scratch.capacity());
+				}
+			}
+		}
+
+		private void reserve(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) {
+				drain();
+				if (buffer.remaining() < bytes) {
+					buffer = ByteBuffer.allocateDirect(Math.max(2 * buffer.capacity(), bytes));
+				}
+			}
+		}
+
+		private void drain() throws IOException {
+			((Buffer) buffer).flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			((Buffer) buffer).clear();
+		}
+
+		/**
+		 * Writes what is still buffered and closes the file.
+		 *
+		 * @throws IOException if this or an earlier write failed.
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			try {
+				if (failure == null) {
+					drain();
+				}
+			}
+			finally {
+				channel.close();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Reads a log written by a {@link Writer}, from first message to last.
+	 */
+	public static final class Reader implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer in;
+		private final MessageCodec codec;
+		private final List<Class<? extends Message>> types;
+
+		public Reader(Path file, MessageCodec codec) throws IOException {
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.codec = codec;
+			types = new ArrayList<>();
+			if (in.remaining() < 4 || in.getInt() != MAGIC) {
+				channel.close();
+				throw new IOException(file + " is not a message log");
+			}
+		}
+
+		/**
+		 * @return the next message in the log, or null at its end.
+		 * @throws IOException if the log is corrupt or names a type this JVM does not know.
+		 */
+		public Entry next() throws IOException {
+			try {
+				while (in.hasRemaining()) {
+					byte kind = in.get();
+					if (kind == TYPE) {
+						short number = in.getShort();
+						String name = MessageCodec.getString(in);
+						if (number != types.size()) {
+							throw new IOException("Type " + name + " is out of order in the message log");
+						}
+						types.add(Class.forName(name).asSubclass(Message.class));
+					}
+					else if (kind == MESSAGE) {
+						int tick = in.getInt();
+						short number = in.getShort();
+						if (number < 0 || number >= types.size()) {
+							throw new IOException("Undeclared type " + number + " in the message log");
+						}
+						Class<? extends Message> type = types.get(number);
+						int length = in.getInt();
+						if (length > in.remaining()) {
+							return null;
+						}
+						ByteBuffer encoding = in.slice();
+						((Buffer) encoding).limit(length);
+						((Buffer) in).position(in.position() + length);
+						return new Entry(tick, type, encoding, codec);
+					}
+					else {
+						throw new IOException("Corrupt message log at byte " + (in.position() - 1));
+					}
+				}
+			}
+			catch (BufferUnderflowException e) {
+				// A run killed while recording leaves a partial last record
+			}
+			catch (ClassNotFoundException e) {
+				throw new IOException("Unknown message type in the message log", e);
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	/**
+	 * A recorded message, decoded on demand.
+	 */
+	public static final class Entry {
+		private final int tick;
+		private final Class<? extends Message> type;
+		private final ByteBuffer encoding;
+		private final MessageCodec codec;
+
+		private Entry(int tick, Class<? extends Message> type, ByteBuffer encoding, MessageCodec codec) {
+			this.tick = tick;
+			this.type = type;
+			this.encoding = encoding;
+			this.codec = codec;
+		}
+
+		/**
+		 * @return the last tick started when the message was sent.
+		 */
+		public int getTick() {
+			return tick;
+		}
+
+		public Class<? extends Message> getType() {
+			return type;
+		}
+
+		public Message decode() {
+			return codec.decode(encoding.duplicate());
+		}
+	}
+}
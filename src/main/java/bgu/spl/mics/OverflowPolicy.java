@@ -0,0 +1,22 @@
+package bgu.spl.mics;
+
+/**
+ * What a {@link BoundedMailbox} does with a new message when it is already full.
+ */
+public enum OverflowPolicy {
+    /** The sender waits until the owner takes a message. */
+    BLOCK,
+    /**
+     * The oldest queued broadcast is discarded to make room for a new broadcast; if none is
+     * queued, or the new message is an event, the sender waits as with {@link #BLOCK}.
+     */
+    DROP_OLDEST,
+    /** A new broadcast is discarded; a new event waits as with {@link #BLOCK}. */
+    DROP_NEWEST,
+    /**
+     * The new message takes the place of the oldest queued broadcast of the same type,
+     * merged into it if both are {@link CoalescingBroadcast}s; if there is none, the sender
+     * waits as with {@link #BLOCK}. Events are never coalesced.
+     */
+    COALESCE
+}
@@ -0,0 +1,157 @@
+package bgu.spl.mics;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Reads the elements of a JSON list one at a time on a background thread, for lists too large
+ * to parse up front, such as sensor logs. The elements must be in time order.
+ * <p>
+ * The reader keeps at most {@code ticksAhead} ticks of elements beyond the last time asked
+ * for, plus one element, so only that window of the list is held in memory. Consumers take
+ * the elements in order with {@link #poll(int)}, which waits for the reader when it has not
+ * got that far yet.
+ */
+public class PrefetchingListReader<T> implements Closeable {
+
+	/**
+	 * Reads one element of the list.
+	 */
+	public interface ElementReader<T> {
+		T read(JsonReader reader) throws IOException;
+	}
+
+	private final ElementReader<T> element;
+	private final ToIntFunction<? super T> time;
+	private final int ticksAhead;
+	private final ReentrantLock lock;
+	// Signalled when the reader added an element or ended, and when the horizon moved
+	private final Condition changed;
+	private final ArrayDeque<T> buffer;
+	private final Thread thread;
+	private int horizon;
+	private boolean done;
+	private IOException failure;
+
+	/**
+	 * Starts reading.
+	 *
+	 * @param open       opens the file, positioned right before the list.
+	 * @param time       the time of an element.
+	 * @param ticksAhead how many ticks beyond the last time asked for to read.
+	 */
+	public PrefetchingListReader(String name, Callable<JsonReader> open, ElementReader<T> element,
+								 ToIntFunction<? super T> time, int ticksAhead) {
+		this.element = element;
+		this.time = time;
+		this.ticksAhead = ticksAhead;
+		lock = new ReentrantLock();
+		changed = lock.newCondition();
+		buffer = new ArrayDeque<>();
+		horizon = ticksAhead;
+		thread = new Thread(() -> read(open), name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return the next element if its time is at most {@code tick}, or null if the next one
+	 *         is later or there are none left.
+	 * @throws IOException if the file could not be read up to there.
+	 */
+	public T poll(int tick) throws IOException {
+		lock.lock();
+		try {
+			T next = awaitNext(tick);
+			return next != null && time.applyAsInt(next) <= tick ? buffer.poll() : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return whether every element has been taken, waiting for the reader if needed.
+	 * @throws IOException if the file could not be read to its end.
+	 */
+	public boolean isExhausted() throws IOException {
+		lock.lock();
+		try {
+			return awaitNext(horizon - ticksAhead) == null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the reader, if it has not reached the end of the list.
+	 */
+	@Override
+	public void close() {
+		thread.interrupt();
+	}
+
+	// Lets the reader go on to tick + ticksAhead and waits until it read the next element or ended
+	private T awaitNext(int tick) throws IOException {
+		if (tick + ticksAhead > horizon) {
+			horizon = tick + ticksAhead;
+			changed.signalAll();
+		}
+		boolean interrupted = false;
+		while (buffer.isEmpty() && !done) {
+			try {
+				changed.await();
+			} catch (InterruptedException e) {
+				// A sensor is interrupted to stop it, which must not lose its place in the file
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (buffer.isEmpty() && failure != null) {
+			throw failure;
+		}
+		return buffer.peek();
+	}
+
+	private void read(Callable<JsonReader> open) {
+		try (JsonReader reader = open.call()) {
+			reader.beginArray();
+			while (reader.hasNext()) {
+				T next = element.read(reader);
+				lock.lock();
+				try {
+					buffer.add(next);
+					changed.signalAll();
+					// Past the horizon, wait for the consumers to catch up
+					while (time.applyAsInt(next) > horizon) {
+						changed.await();
+					}
+				} finally {
+					lock.unlock();
+				}
+			}
+		} catch (InterruptedException e) {
+			// Closed
+		} catch (IOException e) {
+			failure = e;
+		} catch (Exception e) {
+			failure = new IOException(e);
+		} finally {
+			lock.lock();
+			try {
+				done = true;
+				changed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
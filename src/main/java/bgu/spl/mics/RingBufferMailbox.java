@@ -0,0 +1,151 @@
+package bgu.spl.mics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A multi-producer / single-consumer {@link Mailbox} backed by a preallocated array.
+ * <p>
+ * Producers claim a slot by advancing the tail with a CAS, and every slot carries a sequence
+ * number telling whether it is free or holds a published message, so neither side allocates
+ * or takes a lock. The owning micro-service is the only consumer and parks when it runs dry.
+ * <p>
+ * {@link #offer(Message)} must stay non-blocking, so when the ring is full messages spill into
+ * an unbounded overflow queue. While the overflow holds anything, new messages also go there,
+ * which keeps every producer's messages in the order it sent them.
+ */
+public class RingBufferMailbox implements Mailbox {
+	private final Message[] buffer;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong tail;
+	private volatile long head;
+	private final ConcurrentLinkedQueue<Message> overflow;
+	private final AtomicInteger overflowSize;
+	private volatile Thread waiter;
+
+	/**
+	 * @param capacity the number of preallocated slots, rounded up to a power of two.
+	 */
+	public RingBufferMailbox(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		buffer = new Message[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; ++i) {
+			sequences.set(i, i);
+		}
+		mask = size - 1;
+		tail = new AtomicLong();
+		head = 0;
+		overflow = new ConcurrentLinkedQueue<>();
+		overflowSize = new AtomicInteger();
+	}
+
+	@Override
+	public void offer(Message m) {
+		if (!overflow.isEmpty() || !offerToRing(m)) {
+			overflowSize.incrementAndGet();
+			overflow.offer(m);
+		}
+		Thread w = waiter;
+		if (w != null) {
+			LockSupport.unpark(w);
+		}
+	}
+
+	@Override
+	public Message take() throws InterruptedException {
+		Message m = poll();
+		if (m != null) {
+			return m;
+		}
+		waiter = Thread.currentThread();
+		try {
+			// Re-check after publishing ourselves as the waiter so a concurrent offer cannot be missed
+			while ((m = poll()) == null) {
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+				LockSupport.park(this);
+			}
+			return m;
+		}
+		finally {
+			waiter = null;
+		}
+	}
+
+	@Override
+	public int drainTo(Collection<? super Message> batch, int max) {
+		int count = 0;
+		Message m;
+		while (count < max && (m = poll()) != null) {
+			batch.add(m);
+			++count;
+		}
+		return count;
+	}
+
+	@Override
+	public int size() {
+		return (int) (tail.get() - head) + overflowSize.get();
+	}
+
+	/**
+	 * @return the number of slots in the ring.
+	 */
+	public int capacity() {
+		return buffer.length;
+	}
+
+	private boolean offerToRing(Message m) {
+		while (true) {
+			long t = tail.get();
+			int index = (int) t & mask;
+			long diff = sequences.get(index) - t;
+			if (diff == 0) {
+				if (tail.compareAndSet(t, t + 1)) {
+					buffer[index] = m;
+					sequences.set(index, t + 1);
+					return true;
+				}
+			}
+			else if (diff < 0) {
+				// The slot still holds a message from the previous lap: the ring is full
+				return false;
+			}
+		}
+	}
+
+	private Message poll() {
+		long h = head;
+		int index = (int) h & mask;
+		if (sequences.get(index) == h + 1) {
+			Message m = buffer[index];
+			buffer[index] = null;
+			sequences.set(index, h + buffer.length);
+			head = h + 1;
+			return m;
+		}
+		if (tail.get() != h) {
+			// A producer claimed the head slot but has not published it yet; the overflow
+			// only holds messages sent after it, so they must wait
+			return null;
+		}
+		Message m = overflow.poll();
+		if (m != null) {
+			overflowSize.decrementAndGet();
+		}
+		return m;
+	}
+}
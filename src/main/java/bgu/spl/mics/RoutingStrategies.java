@@ -0,0 +1,105 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The {@link RoutingStrategy} implementations offered by the message-bus.
+ */
+public final class RoutingStrategies {
+
+	private RoutingStrategies() {
+	}
+
+	/**
+	 * Hands events to the subscribers in turn. This is the default for every event type.
+	 */
+	public static RoutingStrategy roundRobin() {
+		AtomicInteger next = new AtomicInteger();
+		return (e, subscribers, load) -> Math.floorMod(next.getAndIncrement(), subscribers.length);
+	}
+
+	/**
+	 * Picks the subscriber with the fewest outstanding events, scanning all of them. Ties go
+	 * to the subscribers in turn.
+	 */
+	public static RoutingStrategy leastLoaded() {
+		AtomicInteger next = new AtomicInteger();
+		return (e, subscribers, load) -> {
+			int n = subscribers.length;
+			int start = Math.floorMod(next.getAndIncrement(), n);
+			int best = start;
+			int bestLoad = load.applyAsInt(subscribers[start]);
+			for (int i = 1; i < n && bestLoad > 0; ++i) {
+				int candidate = (start + i) % n;
+				int candidateLoad = load.applyAsInt(subscribers[candidate]);
+				if (candidateLoad < bestLoad) {
+					best = candidate;
+					bestLoad = candidateLoad;
+				}
+			}
+			return best;
+		};
+	}
+
+	/**
+	 * Samples two distinct subscribers at random and picks the one with fewer outstanding
+	 * events. Close to {@link #leastLoaded()} in balance while reading only two loads per event.
+	 */
+	public static RoutingStrategy powerOfTwoChoices() {
+		return (e, subscribers, load) -> {
+			int n = subscribers.length;
+			if (n == 1) {
+				return 0;
+			}
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			int a = random.nextInt(n);
+			int b = random.nextInt(n - 1);
+			if (b >= a) {
+				++b;
+			}
+			return load.applyAsInt(subscribers[a]) <= load.applyAsInt(subscribers[b]) ? a : b;
+		};
+	}
+
+	/**
+	 * Sends all events with equal keys to the same subscriber, as long as the set of
+	 * subscribers does not change.
+	 * <p>
+	 * @param <E>   The event type the strategy is installed for.
+	 * @param keyOf Extracts the routing key of an event; a null key routes to the first subscriber.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E extends Event<?>> RoutingStrategy stickyByKey(Function<? super E, ?> keyOf) {
+		return (e, subscribers, load) -> {
+			Object key = keyOf.apply((E) e);
+			int hash = key == null ? 0 : key.hashCode();
+			// Spread the bits so keys differing only in high bits still land apart
+			hash ^= (hash >>> 16);
+			return Math.floorMod(hash, subscribers.length);
+		};
+	}
+
+	/**
+	 * Looks a strategy up by the name used in the configuration file:
+	 * {@code round-robin}, {@code least-loaded}, {@code power-of-two} or {@code sticky}.
+	 * <p>
+	 * @param keyOf The key extractor used when {@code name} is {@code sticky}.
+	 * @throws IllegalArgumentException if {@code name} is not one of the above.
+	 */
+	public static <E extends Event<?>> RoutingStrategy byName(String name, Function<? super E, ?> keyOf) {
+		switch (name) {
+			case "round-robin":
+				return roundRobin();
+			case "least-loaded":
+				return leastLoaded();
+			case "power-of-two":
+				return powerOfTwoChoices();
+			case "sticky":
+				return stickyByKey(keyOf);
+			default:
+				throw new IllegalArgumentException("Unknown routing strategy: " + name);
+		}
+	}
+}
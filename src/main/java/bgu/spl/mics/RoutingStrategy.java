@@ -0,0 +1,23 @@
+package bgu.spl.mics;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Decides which subscriber of an {@link Event} type receives a sent event.
+ * Each event type has its own strategy instance, see
+ * {@link MessageBusImpl#setRoutingStrategy(Class, RoutingStrategy)}.
+ * Implementations are called concurrently by every sender and must be thread-safe.
+ */
+public interface RoutingStrategy {
+
+	/**
+	 * @param e           The event being sent.
+	 * @param subscribers The current subscribers of {@code e.getClass()}, never empty.
+	 *                    The array must not be modified.
+	 * @param load        Returns the number of events delivered to a subscriber and not completed
+	 *                    yet, whether still queued or held by the subscriber for later. Events
+	 *                    whose sender let go of the Future are no longer counted.
+	 * @return the index in {@code subscribers} of the micro-service to deliver {@code e} to.
+	 */
+	int select(Event<?> e, MicroService[] subscribers, ToIntFunction<MicroService> load);
+}
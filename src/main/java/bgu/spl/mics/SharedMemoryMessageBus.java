@@ -0,0 +1,96 @@
+package bgu.spl.mics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link BridgedMessageBus} for processes on the same host, linked by pairs of
+ * {@link MappedRing}s in a shared directory, ideally on a memory-backed file system such as
+ * {@code /dev/shm}.
+ * <p>
+ * The host process calls {@link #accept(String)} for every worker, which creates the rings
+ * {@code <worker>.down} (host to worker) and {@code <worker>.up} (worker to host); the worker
+ * process then calls {@link #connect(String, long)} with the same name. The host removes the
+ * rings when it closes, so the host must be started first.
+ */
+public class SharedMemoryMessageBus extends BridgedMessageBus {
+	public static final int DEFAULT_RING_CAPACITY = 1 << 20;
+
+	private final Path directory;
+	private final int ringCapacity;
+
+	public SharedMemoryMessageBus(Path directory, MessageCodec codec) {
+		this(directory, codec, DEFAULT_RING_CAPACITY);
+	}
+
+	/**
+	 * @param ringCapacity bytes per direction and worker, a power of two; a frame may use at most half.
+	 */
+	public SharedMemoryMessageBus(Path directory, MessageCodec codec, int ringCapacity) {
+		super(codec);
+		this.directory = directory;
+		this.ringCapacity = ringCapacity;
+	}
+
+	/**
+	 * Host side: creates the rings of the worker {@code worker} and starts talking to it.
+	 * Does not wait for the worker to connect; see {@link #awaitReady()}.
+	 */
+	public void accept(String worker) throws IOException {
+		Files.createDirectories(directory);
+		MappedRing down = MappedRing.create(directory.resolve(worker + ".down"), ringCapacity);
+		// Created last: its appearance tells the worker both rings are in place
+		MappedRing up = MappedRing.create(directory.resolve(worker + ".up"), ringCapacity);
+		connect(worker, new RingLink(down, up, true));
+	}
+
+	/**
+	 * Worker side: opens the rings the host created for {@code worker}.
+	 *
+	 * @param timeoutMillis how long to wait for the host to create them.
+	 * @throws IOException if they did not appear in time.
+	 */
+	public void connect(String worker, long timeoutMillis) throws IOException, InterruptedException {
+		Path up = directory.resolve(worker + ".up");
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (!Files.exists(up)) {
+			if (System.nanoTime() > deadline) {
+				throw new IOException("No host created " + up);
+			}
+			Thread.sleep(10);
+		}
+		connect(worker, new RingLink(MappedRing.open(up), MappedRing.open(directory.resolve(worker + ".down")), false));
+	}
+
+	private static final class RingLink implements Link {
+		private final MappedRing out;
+		private final MappedRing in;
+		// The side that created the rings removes them
+		private final boolean owner;
+
+		private RingLink(MappedRing out, MappedRing in, boolean owner) {
+			this.out = out;
+			this.in = in;
+			this.owner = owner;
+		}
+
+		@Override
+		public void send(ByteBuffer frame) throws InterruptedException {
+			out.write(frame);
+		}
+
+		@Override
+		public ByteBuffer receive() throws InterruptedException {
+			return in.take();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close(owner);
+			in.close(owner);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package bgu.spl.mics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Owns the per-run state of one simulation: the {@link MessageBusImpl}, the FusionSlam, the
+ * statistics and every other object that used to be a JVM-wide singleton. Their
+ * {@code getInstance()} methods return the instance of the context bound to the calling thread,
+ * so several simulations can run side by side in one JVM without seeing each other's messages.
+ * <p>
+ * A thread that never bound a context uses {@link #DEFAULT}, which keeps single-run programs
+ * and tests working unchanged. A {@link MicroService} remembers the context it was created in
+ * and binds it on whatever thread runs it.
+ */
+public final class SimulationContext {
+	public static final SimulationContext DEFAULT = new SimulationContext("default");
+
+	private static final ThreadLocal<SimulationContext> CURRENT = new ThreadLocal<>();
+
+	private final String name;
+	private final ConcurrentHashMap<Class<?>, Object> instances;
+
+	/**
+	 * Restores the previously bound context when closed.
+	 */
+	public interface Scope extends AutoCloseable {
+		@Override
+		void close();
+	}
+
+	/**
+	 * @param name identifies the run, e.g. in the JMX object names.
+	 */
+	public SimulationContext(String name) {
+		this.name = name;
+		instances = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return the context bound to the calling thread, or {@link #DEFAULT} if there is none.
+	 */
+	public static SimulationContext current() {
+		SimulationContext context = CURRENT.get();
+		return context == null ? DEFAULT : context;
+	}
+
+	/**
+	 * Binds this context to the calling thread until the returned scope is closed.
+	 * Use it in a try-with-resources statement.
+	 */
+	public Scope bind() {
+		SimulationContext previous = CURRENT.get();
+		CURRENT.set(this);
+		return () -> {
+			if (previous == null) {
+				CURRENT.remove();
+			}
+			else {
+				CURRENT.set(previous);
+			}
+		};
+	}
+
+	/**
+	 * @return this context's instance of {@code type}, created by {@code factory} on first use.
+	 *         Concurrent first calls all get the same instance.
+	 */
+	public <T> T get(Class<T> type, Supplier<? extends T> factory) {
+		Object instance = instances.get(type);
+		if (instance == null) {
+			// Not computeIfAbsent: a factory may itself look up other instances of this context
+			Object created = factory.get();
+			instance = instances.putIfAbsent(type, created);
+			if (instance == null) {
+				instance = created;
+			}
+		}
+		return type.cast(instance);
+	}
+
+	/**
+	 * Makes {@code instance} this context's instance of {@code type}, e.g. to install another
+	 * {@link MessageBus}. Must be called before anything in the context looks {@code type} up.
+	 */
+	public <T> void set(Class<T> type, T instance) {
+		instances.put(type, instance);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
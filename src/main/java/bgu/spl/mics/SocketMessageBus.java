@@ -0,0 +1,244 @@
+package bgu.spl.mics;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link BridgedMessageBus} for processes on different hosts, linked by TCP connections.
+ * <p>
+ * The host process calls {@link #listen(InetSocketAddress, int)} with the number of workers to
+ * expect; every worker process then calls {@link #connect(String, InetSocketAddress, long)} with
+ * a name of its own. {@link #awaitReady()} on the host waits for all the workers to connect.
+ * <p>
+ * The connections are non-blocking channels. A frame travels as its length followed by its
+ * bytes; frames are collected in a buffer and written together when the bus flushes, once per
+ * batch of forwarded messages rather than once per message.
+ */
+public class SocketMessageBus extends BridgedMessageBus {
+	private static final long RETRY_MILLIS = 100;
+
+	private volatile ServerSocketChannel server;
+
+	public SocketMessageBus(MessageCodec codec) {
+		super(codec);
+	}
+
+	/**
+	 * Host side: accepts {@code workers} connections on {@code address} in the background and
+	 * starts talking to each worker as it connects.
+	 *
+	 * @param address the address to listen on; port 0 picks a free port, see {@link #getPort()}.
+	 */
+	public void listen(InetSocketAddress address, int workers) throws IOException {
+		server = ServerSocketChannel.open();
+		server.bind(address);
+		expectPeers(workers);
+		Thread acceptor = new Thread(() -> accept(workers), "bridge-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return the port {@link #listen} listens on.
+	 */
+	public int getPort() throws IOException {
+		return ((InetSocketAddress) server.getLocalAddress()).getPort();
+	}
+
+	private void accept(int workers) {
+		try {
+			for (int i = 0; i < workers; ++i) {
+				SocketLink link = new SocketLink(server.accept());
+				// A worker introduces itself with its name
+				connect(MessageCodec.getString(link.receive()), link);
+			}
+		}
+		catch (IOException e) {
+			if (server.isOpen()) {
+				System.err.println("Stopped accepting workers: " + e);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			closeServer();
+		}
+	}
+
+	/**
+	 * Worker side: connects to the host listening on {@code host}.
+	 *
+	 * @param timeoutMillis how long to keep trying while the host is not listening yet.
+	 * @throws IOException if it did not listen in time.
+	 */
+	public void connect(String worker, InetSocketAddress host, long timeoutMillis) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		SocketChannel channel;
+		while (true) {
+			try {
+				channel = SocketChannel.open(host);
+				break;
+			}
+			catch (ConnectException e) {
+				if (System.nanoTime() > deadline) {
+					throw e;
+				}
+				Thread.sleep(RETRY_MILLIS);
+			}
+		}
+		SocketLink link = new SocketLink(channel);
+		ByteBuffer hello = ByteBuffer.allocate(256);
+		MessageCodec.putString(hello, worker);
+		((Buffer) hello).flip();
+		link.send(hello);
+		link.flush();
+		connect(worker, link);
+	}
+
+	/**
+	 * Also stops accepting workers.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		closeServer();
+		super.close();
+	}
+
+	private void closeServer() {
+		ServerSocketChannel server = this.server;
+		if (server != null) {
+			try {
+				server.close();
+			}
+			catch (IOException e) {
+				// Nothing left to do with it
+			}
+		}
+	}
+
+	private static final class SocketLink implements Link {
+		private static final int BUFFER_SIZE = 64 * 1024;
+
+		private final SocketChannel channel;
+		// One for the thread sending, one for the thread receiving
+		private final Selector writable;
+		private final Selector readable;
+		// Frames not flushed yet, in write mode
+		private ByteBuffer out;
+		// Bytes received and not yet returned, in read mode
+		private ByteBuffer in;
+		// Returned by receive, a view of in
+		private ByteBuffer frame;
+
+		private SocketLink(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			writable = Selector.open();
+			readable = Selector.open();
+			channel.register(writable, SelectionKey.OP_WRITE);
+			channel.register(readable, SelectionKey.OP_READ);
+			out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			((Buffer) in).flip();
+			frame = in.duplicate();
+		}
+
+		@Override
+		public void send(ByteBuffer frame) throws IOException, InterruptedException {
+			int size = 4 + frame.remaining();
+			if (out.remaining() < size) {
+				flush();
+				if (out.remaining() < size) {
+					out = ByteBuffer.allocateDirect(Math.max(2 * out.capacity(), size));
+				}
+			}
+			out.putInt(frame.remaining()).put(frame);
+		}
+
+		@Override
+		public void flush() throws IOException, InterruptedException {
+			((Buffer) out).flip();
+			try {
+				while (out.hasRemaining()) {
+					if (channel.write(out) == 0) {
+						await(writable);
+					}
+				}
+			}
+			finally {
+				out.compact();
+			}
+		}
+
+		@Override
+		public ByteBuffer receive() throws IOException, InterruptedException {
+			while (true) {
+				if (in.remaining() >= 4) {
+					int length = in.getInt(in.position());
+					int start = in.position() + 4;
+					if (in.remaining() - 4 >= length) {
+						((Buffer) frame).limit(start + length);
+						((Buffer) frame).position(start);
+						((Buffer) in).position(start + length);
+						return frame;
+					}
+					if (length > in.capacity() - 4) {
+						ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(2 * in.capacity(), length + 4));
+						larger.put(in);
+						((Buffer) larger).flip();
+						in = larger;
+						frame = in.duplicate();
+					}
+				}
+				fill();
+			}
+		}
+
+		private void fill() throws IOException, InterruptedException {
+			in.compact();
+			try {
+				int read;
+				while ((read = channel.read(in)) == 0) {
+					await(readable);
+				}
+				if (read < 0) {
+					throw new EOFException("Connection closed");
+				}
+			}
+			finally {
+				((Buffer) in).flip();
+			}
+		}
+
+		private static void await(Selector selector) throws IOException, InterruptedException {
+			selector.select();
+			selector.selectedKeys().clear();
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				writable.close();
+				readable.close();
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+}
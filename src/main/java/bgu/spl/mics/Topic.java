@@ -0,0 +1,17 @@
+package bgu.spl.mics;
+
+/**
+ * A handle for sending broadcasts of one type, obtained once from
+ * {@link MessageBus#topic(Class)}, typically in {@link MicroService#initialize()}.
+ * <p>
+ * Publishing through a topic reaches the same subscribers as {@link MessageBus#sendBroadcast(Broadcast)},
+ * including those that subscribe after the handle was obtained, but lets the bus resolve the
+ * message type once instead of on every send.
+ */
+public interface Topic<B extends Broadcast> {
+
+	/**
+	 * Sends {@code b} to every micro-service subscribed to the topic's type.
+	 */
+	void publish(B b);
+}
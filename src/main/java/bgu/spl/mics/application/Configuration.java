@@ -7,7 +7,14 @@ public class Configuration {
     private LidarConfig LiDarWorkers;
     private String poseJsonFile;
     private int TickTime;
+    private String TickUnit;
     private int Duration;
+    private List<MailboxConfig> Mailboxes;
+    private String ExecutionMode;
+    private RemoteWorkersConfig RemoteWorkers;
+    private String BusLog;
+    private String Clock;
+    private Integer PrefetchTicks;
 
     // Nested class for Cameras
     public static class CamerasConfig {
@@ -46,6 +53,7 @@ public class Configuration {
     public static class LidarConfig {
         private List<LidarConfigItem> LidarConfigurations;
         private String lidars_data_path;
+        private String routing;
 
         public List<LidarConfigItem> getLidarConfigurations() {
             return LidarConfigurations;
@@ -54,6 +62,11 @@ public class Configuration {
         public String getLidarsDataPath() {
             return lidars_data_path;
         }
+
+        // Optional: how DetectObjectsEvents are spread over the workers (null means round-robin)
+        public String getRouting() {
+            return routing;
+        }
     }
 
     // Nested class for individual LiDAR configuration
@@ -70,6 +83,47 @@ public class Configuration {
         }
     }
 
+    // Nested class for an optional bounded mailbox of one service
+    public static class MailboxConfig {
+        private String service;
+        private int capacity;
+        private String overflow;
+
+        public String getService() {
+            return service;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public String getOverflow() {
+            return overflow;
+        }
+    }
+
+    // Nested class for LiDAR workers running in processes of their own
+    public static class RemoteWorkersConfig {
+        private String transport;
+        private String address;
+        private List<Integer> lidarIds;
+
+        // "shm" (the default) or "tcp"
+        public String getTransport() {
+            return transport;
+        }
+
+        // For "shm", the directory holding the rings, relative to the configuration file; for "tcp", host:port
+        // of the simulation
+        public String getAddress() {
+            return address;
+        }
+
+        public List<Integer> getLidarIds() {
+            return lidarIds;
+        }
+    }
+
     public CamerasConfig getCameras() {
         return Cameras;
     }
@@ -86,7 +140,43 @@ public class Configuration {
         return TickTime;
     }
 
+    // Optional: "s", "ms" or "us", the unit of TickTime (null means s)
+    public String getTickUnit() {
+        return TickUnit;
+    }
+
     public int getDuration() {
         return Duration;
     }
+
+    public List<MailboxConfig> getMailboxes() {
+        return Mailboxes;
+    }
+
+    // Optional: "PLATFORM", "VIRTUAL" or "ACTOR" execution of the services (null means PLATFORM)
+    public String getExecutionMode() {
+        return ExecutionMode;
+    }
+
+    // Optional: LiDAR workers run by GurionRockWorker processes instead of this one (null means none)
+    public RemoteWorkersConfig getRemoteWorkers() {
+        return RemoteWorkers;
+    }
+
+    // Optional: file the bus traffic is recorded to for GurionRockReplayer, relative to the configuration file
+    public String getBusLog() {
+        return BusLog;
+    }
+
+    // Optional: "paced", "discrete-event", which skips the ticks no service has work at, or "lockstep",
+    // which starts each tick once the services are done with the last (null means paced)
+    public String getClock() {
+        return Clock;
+    }
+
+    // Optional: read the camera and LiDAR data as the simulation goes, this many ticks ahead of the clock,
+    // instead of parsing it up front (null means up front)
+    public Integer getPrefetchTicks() {
+        return PrefetchTicks;
+    }
 }
\ No newline at end of file
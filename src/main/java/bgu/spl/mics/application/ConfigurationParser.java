@@ -1,5 +1,7 @@
 package bgu.spl.mics.application;
 
+import bgu.spl.mics.PrefetchingListReader;
+import bgu.spl.mics.application.objects.LiDarDataBase;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
 import bgu.spl.mics.application.objects.Pose;
 import bgu.spl.mics.application.objects.StampedCloudPoints;
@@ -8,14 +10,22 @@ import com.google.gson.Gson;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import java.lang.reflect.Type;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringReader;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class ConfigurationParser {
@@ -44,6 +54,29 @@ public class ConfigurationParser {
         }
     }
 
+    /**
+     * Reads the detections of one camera from camera data JSON as the simulation goes, on a
+     * thread of its own, {@code ticksAhead} ticks ahead of the last detection time asked for.
+     * The detections of the camera must be in time order.
+     *
+     * @param cameraKey the key of the camera's list; a camera missing from the file has no detections
+     */
+    public static PrefetchingListReader<StampedDetectedObjects> streamCameraData(String filePath, String cameraKey, int ticksAhead) {
+        Gson gson = new Gson();
+        return new PrefetchingListReader<>(cameraKey, () -> {
+            JsonReader reader = new JsonReader(new FileReader(filePath));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(cameraKey)) {
+                    return reader;
+                }
+                reader.skipValue();
+            }
+            reader.close();
+            return new JsonReader(new StringReader("[]"));
+        }, reader -> gson.fromJson(reader, StampedDetectedObjects.class), StampedDetectedObjects::getTime, ticksAhead);
+    }
+
     public static List<StampedCloudPoints> parseLidarData(String filePath) throws IOException, JsonIOException, JsonSyntaxException {
         Gson gson = new Gson();
         try (FileReader reader = new FileReader(filePath)) {
@@ -65,6 +98,19 @@ public static List<Pose> parsePoseData(String filePath) throws IOException, Json
 
     // ✅ New method to parse all data using paths from the configuration
     public static ParsedData parseAllData(Configuration config, String configFilePath) throws IOException {
+        return parseAllData(config, configFilePath, new StartupReport());
+    }
+
+    /**
+     * Parses the camera, LiDAR and pose files named by the configuration, each once and the three
+     * in parallel. The LiDAR data is read straight into a {@link LiDarDataBase}, of no context yet;
+     * LiDAR data converted by LiDarDataConverter is mapped instead. With PrefetchTicks the camera
+     * and LiDAR data are streamed during the run, and are null here.
+     *
+     * @param report receives the time each file took to load.
+     * @throws IOException if a file is missing or cannot be parsed.
+     */
+    public static ParsedData parseAllData(Configuration config, String configFilePath, StartupReport report) throws IOException {
         Path configDir = Paths.get(configFilePath).getParent();
     
         String cameraPath = configDir.resolve(config.getCameras().getCameraDataPath()).toString();
@@ -75,20 +121,81 @@ public static List<Pose> parsePoseData(String filePath) throws IOException, Json
         if (!new File(lidarPath).exists()) throw new IOException("LiDAR data file not found: " + lidarPath);
         if (!new File(posePath).exists()) throw new IOException("Pose data file not found: " + posePath);
     
-        Map<String, List<StampedDetectedObjects>> cameraData = parseCameraData(cameraPath);
-        List<StampedCloudPoints> lidarData = parseLidarData(lidarPath);
-        List<Pose> poseData = parsePoseData(posePath);
-    
-        return new ParsedData(cameraData, lidarData, poseData);
+        boolean streamed = config.getPrefetchTicks() != null;
+        long[] nanos = new long[3];
+        ExecutorService loaders = Executors.newFixedThreadPool(3, ConfigurationParser::loaderThread);
+        boolean loaded = false;
+        try {
+            Future<Map<String, List<StampedDetectedObjects>>> cameraData =
+                    streamed ? null : loaders.submit(timed(() -> parseCameraData(cameraPath), nanos, 0));
+            Future<LiDarDataBase> lidarData =
+                    streamed ? null : loaders.submit(timed(() -> LiDarDataBase.load(lidarPath), nanos, 1));
+            Future<List<Pose>> poseData = loaders.submit(timed(() -> parsePoseData(posePath), nanos, 2));
+
+            ParsedData data = new ParsedData(await(cameraData), await(lidarData), await(poseData));
+            if (!streamed) {
+                report.record("camera data", nanos[0]);
+                report.record("LiDAR data", nanos[1]);
+            }
+            report.record("pose data", nanos[2]);
+            loaded = true;
+            return data;
+        } finally {
+            // After a failure the other files are of no use, so stop loading them
+            if (loaded) {
+                loaders.shutdown();
+            } else {
+                loaders.shutdownNow();
+            }
+        }
+    }
+
+    // Parsing does not answer interrupts, so a loader still running after a failure must not keep the JVM up
+    private static Thread loaderThread(Runnable loader) {
+        Thread thread = new Thread(loader, "data-loader");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    // Times the loader into nanos[slot]
+    private static <T> Callable<T> timed(Callable<T> loader, long[] nanos, int slot) {
+        return () -> {
+            long start = System.nanoTime();
+            T loaded = loader.call();
+            nanos[slot] = System.nanoTime() - start;
+            return loaded;
+        };
+    }
+
+    // Waits for a loader, null for none, and rethrows what it failed with
+    private static <T> T await(Future<T> loading) throws IOException {
+        if (loading == null) {
+            return null;
+        }
+        try {
+            return loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading the data files");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
     
         // Inner class to hold all parsed data
         public static class ParsedData {
             private final Map<String, List<StampedDetectedObjects>> cameraData;
-            private final List<StampedCloudPoints> lidarData;
+            private final LiDarDataBase lidarData;
             private final List<Pose> poseData;
     
-            public ParsedData(Map<String, List<StampedDetectedObjects>> cameraData, List<StampedCloudPoints> lidarData, List<Pose> poseData) {
+            public ParsedData(Map<String, List<StampedDetectedObjects>> cameraData, LiDarDataBase lidarData, List<Pose> poseData) {
                 this.cameraData = cameraData;
                 this.lidarData = lidarData;
                 this.poseData = poseData;
@@ -98,7 +205,7 @@ public static List<Pose> parsePoseData(String filePath) throws IOException, Json
                 return cameraData;
             }
     
-            public List<StampedCloudPoints> getLidarData() {
+            public LiDarDataBase getLidarData() {
                 return lidarData;
             }
     
@@ -0,0 +1,102 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.SimulationContext;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs every configuration file found under a directory, several at a time in one JVM.
+ * Each run gets a {@link SimulationContext} of its own, so the runs share nothing but the
+ * JIT-compiled code. Each run writes its output next to its configuration file, as
+ * {@link GurionRockRunner} does, so two configuration files in the same directory overwrite
+ * each other's output.
+ */
+public class GurionRockBatchRunner {
+
+    private static final String DEFAULT_PATTERN = "configuration_file*.json";
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: <configDirectory> [parallelism] [fileNamePattern]");
+            return;
+        }
+
+        Path root = Paths.get(args[0]);
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String pattern = args.length > 2 ? args[2] : DEFAULT_PATTERN;
+        try {
+            List<Path> configs = findConfigurations(root, pattern);
+            System.out.println("Running " + configs.size() + " simulations, " + parallelism + " at a time");
+            int failed = runAll(root, configs, parallelism);
+            System.out.println("\n=== BATCH DONE: " + (configs.size() - failed) + " succeeded, " + failed + " failed ===");
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the files under {@code root} whose name matches the glob {@code pattern}, in path order.
+     */
+    static List<Path> findConfigurations(Path root, String pattern) throws IOException {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile)
+                        .filter(p -> matcher.matches(p.getFileName()))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Runs the simulations on a pool of {@code parallelism} threads and reports each one's outcome.
+     *
+     * @return the number of simulations that failed.
+     */
+    static int runAll(Path root, List<Path> configs, int parallelism) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(parallelism, 1));
+        try {
+            List<Future<Long>> runs = new ArrayList<>();
+            for (Path config : configs) {
+                String name = root.relativize(config).toString();
+                runs.add(pool.submit(() -> runOne(name, config)));
+            }
+
+            int failed = 0;
+            for (int i = 0; i < configs.size(); ++i) {
+                Path config = configs.get(i);
+                try {
+                    long millis = runs.get(i).get();
+                    System.out.println("  OK     " + config + " (" + millis + " ms)");
+                } catch (ExecutionException e) {
+                    ++failed;
+                    System.out.println("  FAILED " + config + ": " + e.getCause());
+                }
+            }
+            return failed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Returns the wall-clock time of the run in milliseconds
+    private static long runOne(String name, Path config) throws Exception {
+        long start = System.nanoTime();
+        try (SimulationContext.Scope scope = new SimulationContext(name).bind()) {
+            GurionRockRunner.run(config.toString());
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,143 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.Event;
+import bgu.spl.mics.LastFrames;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MessageLog;
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
+import bgu.spl.mics.application.messages.SensorMessageCodec;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.services.FusionSlamService;
+import bgu.spl.mics.application.services.TimeService;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-runs the fusion stage of a recorded simulation: feeds the messages of a bus log, written
+ * by a run whose configuration has "BusLog", to a FusionSlamService without the camera, LiDAR,
+ * pose and time services. There are no ticks to wait for: each message is sent as soon as the
+ * service has handled the one before, so it sees them in the recorded order and none overtakes
+ * another in its mailbox.
+ * <p>
+ * The statistics those services would have kept are rebuilt from the log: the ticks each
+ * TickBroadcast stands for, detected objects and the cameras' last frames from DetectObjectsEvents, and
+ * tracked objects from TrackedObjectsEvents. The LiDAR workers' last frames are not recorded,
+ * so an error output lacks them.
+ */
+public class GurionRockReplayer {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.err.println("Usage: <busLogPath> [outputDirectory]");
+            return;
+        }
+
+        Path log = Paths.get(args[0]).toAbsolutePath();
+        String outputDirectory = args.length > 1 ? args[1] : log.getParent().toString();
+        try {
+            long start = System.nanoTime();
+            int replayed = replay(log, outputDirectory);
+            System.out.println("Replayed " + replayed + " messages in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Starts recording the traffic of the current simulation's bus to {@code file}.
+     */
+    static MessageLog.Writer startRecording(Path file) throws IOException {
+        MessageLog.Writer log = new MessageLog.Writer(file, new SensorMessageCodec(),
+                m -> m instanceof TickBroadcast ? ((TickBroadcast) m).getCurrentTick() : -1);
+        MessageBusImpl.getInstance().setRecorder(log::record);
+        return log;
+    }
+
+    /**
+     * Replays {@code log} to a FusionSlamService writing its output to {@code outputDirectory},
+     * in the {@link bgu.spl.mics.SimulationContext} bound to the calling thread.
+     *
+     * @return the number of messages replayed before the service terminated.
+     */
+    public static int replay(Path log, String outputDirectory) throws Exception {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        StatisticalFolder stats = StatisticalFolder.getInstance();
+        int replayed = 0;
+        try (MessageLog.Reader reader = new MessageLog.Reader(log, new SensorMessageCodec())) {
+            Latch.getInstance(1);
+            FusionSlamService service = new FusionSlamService(FusionSlam.getInstance(), outputDirectory);
+            Thread fusion = new Thread(service);
+            fusion.start();
+            Latch.getInstance(0).geLatch().await();
+
+            MessageLog.Entry entry;
+            boolean running;
+            while ((running = awaitIdle(bus, fusion)) && (entry = reader.next()) != null) {
+                Message m = entry.decode();
+                // What the skipped services would have counted before sending it
+                if (m instanceof TickBroadcast) {
+                    // A tick of the discrete-event clock stands for the idle ticks it skipped too
+                    TickBroadcast tick = (TickBroadcast) m;
+                    stats.addRunTime(tick.getCurrentTick() - tick.getFirstTick() + 1);
+                }
+                else if (m instanceof DetectObjectsEvent) {
+                    DetectObjectsEvent detect = (DetectObjectsEvent) m;
+                    LastFrames.getInstance().setLastCameraFrame("Camera" + detect.getCameraId(),
+                            detect.getStampedObjects().getDetectedObjects(), detect.getStampedObjects().getTime());
+                    stats.addDetectedObjects(detect.getStampedObjects().getDetectedObjects().size());
+                }
+                else if (m instanceof TrackedObjectsEvent) {
+                    stats.addTrackedObjects(((TrackedObjectsEvent) m).getTrackedObjects().size());
+                }
+
+                if (m instanceof Event) {
+                    bus.sendEvent((Event<?>) m);
+                }
+                else {
+                    bus.sendBroadcast((Broadcast) m);
+                }
+                ++replayed;
+            }
+
+            if (running) {
+                // The recorded run ended early; stop the service the way the end of time would
+                System.err.println("The bus log ended before the fusion service did");
+                bus.sendBroadcast(new TerminatedBroadcast(TimeService.class, true));
+            }
+            fusion.join();
+        }
+        return replayed;
+    }
+
+    /**
+     * Waits until the service running on {@code service} has handled every message it was
+     * sent, as counted by {@code bus}, or has ended.
+     *
+     * @return whether it is still running; a service stops itself by interrupting its thread
+     *         before it counts the message that stopped it.
+     */
+    private static boolean awaitIdle(MessageBusImpl bus, Thread service) {
+        for (int attempt = 0; !bus.isQuiescent(null); ++attempt) {
+            if (!service.isAlive()) {
+                return false;
+            }
+            // Most messages are handled within microseconds; sleep a little once they are not
+            if (attempt < 64) {
+                Thread.yield();
+            }
+            else {
+                LockSupport.parkNanos(20_000);
+            }
+        }
+        return service.isAlive() && !service.isInterrupted();
+    }
+}
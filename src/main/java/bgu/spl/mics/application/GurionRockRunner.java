@@ -2,6 +2,21 @@ package bgu.spl.mics.application;
 
 import bgu.spl.mics.application.Configuration.CameraConfig;
 import bgu.spl.mics.application.Configuration.LidarConfigItem;
+import bgu.spl.mics.application.Configuration.MailboxConfig;
+
+import bgu.spl.mics.ActorScheduler;
+import bgu.spl.mics.BoundedMailbox;
+import bgu.spl.mics.BridgedMessageBus;
+import bgu.spl.mics.ExecutionMode;
+import bgu.spl.mics.LatencyHistogram;
+import bgu.spl.mics.MessageBusImpl;
+import bgu.spl.mics.MessageLog;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.OverflowPolicy;
+import bgu.spl.mics.PrefetchingListReader;
+import bgu.spl.mics.RoutingStrategies;
+import bgu.spl.mics.SimulationContext;
+import bgu.spl.mics.application.messages.DetectObjectsEvent;
 
 import bgu.spl.mics.application.objects.Camera;
 import bgu.spl.mics.application.objects.LiDarWorkerTracker;
@@ -10,6 +25,8 @@ import bgu.spl.mics.application.objects.Pose;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
 import bgu.spl.mics.application.objects.LiDarDataBase;
 import bgu.spl.mics.application.objects.FusionSlam;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TickSchedule;
 
 import bgu.spl.mics.application.services.CameraService;
 import bgu.spl.mics.application.services.LiDarService;
@@ -23,6 +40,8 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The main entry point for the GurionRock Pro Max Ultra Over 9000 simulation.
@@ -37,85 +56,186 @@ public class GurionRockRunner {
             return;
         }
 
-        String configPath = args[0];
         try {
-            // 1) Parse config
-            Configuration config = ConfigurationParser.parseConfigurationFile(configPath);
-
-            // 2) Parse the camera, lidar, pose data
-            ConfigurationParser.ParsedData data = ConfigurationParser.parseAllData(config, configPath);
-            Map<String, List<StampedDetectedObjects>> cameraData = data.getCameraData();
-            // List<StampedCloudPoints> lidarData                 = data.getLidarData();
-            List<Pose> poseData                                = data.getPoseData();
-
-            // 3) Build Cameras
-            List<Camera> cameras = new ArrayList<>();
-            for (CameraConfig cc : config.getCameras().getCamerasConfigurations()) {
-                String key = cc.getCameraKey();
+            run(args[0]);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the simulation described by the configuration file at {@code configPath} and returns
+     * once all its services have terminated. All shared state is taken from the
+     * {@link SimulationContext} bound to the calling thread.
+     */
+    public static void run(String configPath) throws Exception {
+        StartupReport startup = new StartupReport();
+        long phase = System.nanoTime();
+
+        // 1) Parse config
+        Configuration config = ConfigurationParser.parseConfigurationFile(configPath);
+        phase = startup.recordSince("configuration", phase);
+
+        // 2) Parse the camera, lidar, pose data, each file once and all three in parallel
+        ConfigurationParser.ParsedData data = ConfigurationParser.parseAllData(config, configPath, startup);
+        Map<String, List<StampedDetectedObjects>> cameraData = data.getCameraData();
+        List<Pose> poseData                                = data.getPoseData();
+        phase = startup.recordSince("data files, in parallel", phase);
+
+        // 3) Build Cameras
+        // With PrefetchTicks their detections are read as the clock goes instead
+        Integer prefetchTicks = config.getPrefetchTicks();
+        if (prefetchTicks != null && "discrete-event".equals(config.getClock())) {
+            throw new IllegalArgumentException("The discrete-event clock needs all the detections up front, not PrefetchTicks");
+        }
+        if (prefetchTicks != null && !"lockstep".equals(config.getClock())) {
+            // LiDAR entries are dropped by the latest tick read, which only bounds how far behind a worker is in lockstep
+            throw new IllegalArgumentException("PrefetchTicks needs the lockstep clock, so that no LiDAR worker falls behind");
+        }
+        Path configDir = Paths.get(configPath).getParent();
+        List<PrefetchingListReader<StampedDetectedObjects>> detectionStreams = new ArrayList<>();
+        List<Camera> cameras = new ArrayList<>();
+        for (CameraConfig cc : config.getCameras().getCamerasConfigurations()) {
+            String key = cc.getCameraKey();
+            Camera cam;
+            if (prefetchTicks != null) {
+                String cameraPath = configDir.resolve(config.getCameras().getCameraDataPath()).toString();
+                PrefetchingListReader<StampedDetectedObjects> detections =
+                        ConfigurationParser.streamCameraData(cameraPath, key, prefetchTicks);
+                detectionStreams.add(detections);
+                cam = new Camera(cc.getId(), cc.getFrequency(), detections);
+            }
+            else {
                 List<StampedDetectedObjects> detections = cameraData.getOrDefault(key, new ArrayList<>());
-                Camera cam = new Camera(cc.getId(), cc.getFrequency(), detections);
-                cameras.add(cam);
+                cam = new Camera(cc.getId(), cc.getFrequency(), detections);
             }
+            cameras.add(cam);
+        }
 
-            // 4) Build LiDarTrackerWorkers
-            List<LiDarWorkerTracker> lidarWorkers = new ArrayList<>();
-            for (LidarConfigItem liConf : config.getLiDarWorkers().getLidarConfigurations()) {
-                LiDarWorkerTracker lw = new LiDarWorkerTracker(liConf.getId(), liConf.getFrequency());
-                lidarWorkers.add(lw);
-            }
+        // 4) Build LiDarTrackerWorkers
+        List<LiDarWorkerTracker> lidarWorkers = new ArrayList<>();
+        for (LidarConfigItem liConf : config.getLiDarWorkers().getLidarConfigurations()) {
+            LiDarWorkerTracker lw = new LiDarWorkerTracker(liConf.getId(), liConf.getFrequency());
+            lidarWorkers.add(lw);
+        }
+
+        // 5) Build the LiDarDataBase from the data already parsed, or the stream
+        String lidarPath = configDir.resolve(config.getLiDarWorkers().getLidarsDataPath()).toString();
+        LiDarDataBase db;
+        if (prefetchTicks != null) {
+            // A detection of time t is looked up at tick t + camera frequency + LiDAR frequency + 1 at the
+            // latest, and in lockstep another worker is at most a tick ahead
+            int retention = 2;
+            retention += cameras.stream().mapToInt(Camera::getFrequency).max().orElse(0);
+            retention += lidarWorkers.stream().mapToInt(LiDarWorkerTracker::getFrequency).max().orElse(0);
+            db = LiDarDataBase.getStreamingInstance(lidarPath, prefetchTicks, retention);
+        }
+        else {
+            db = data.getLidarData();
+            SimulationContext.current().set(LiDarDataBase.class, db);
+        }
 
-            // 5) Build the LiDarDataBase (if you want a single global DB)
-            // Pass the same file path from config? 
-            // Actually, we already have 'lidarData'. We can do:
-            Path configDir = Paths.get(configPath).getParent();
-            String lidarPath = configDir.resolve(config.getLiDarWorkers().getLidarsDataPath()).toString();
-            LiDarDataBase db = LiDarDataBase.getInstance(lidarPath); 
-            // Now db.getCloudPoints() is the same as 'lidarData', presumably
+        // 6) Build a GPSIMU with the pose data
+        GPSIMU gpsimu = new GPSIMU(poseData);
+        phase = startup.recordSince("sensors", phase);
 
-            // 6) Build a GPSIMU with the pose data
-            GPSIMU gpsimu = new GPSIMU(poseData);
+        // 7) Print all created data (before starting threads)
+        System.out.println("=== PRINTING CREATED DATA ===");
 
-            // 7) Print all created data (before starting threads)
-            System.out.println("=== PRINTING CREATED DATA ===");
+        TimeUnit tickUnit = tickUnit(config.getTickUnit());
+        System.out.println("TickTime: " + config.getTickTime() + " " + tickUnit.name().toLowerCase()
+                           + ", Duration: " + config.getDuration());
 
-            System.out.println("TickTime: " + config.getTickTime() + ", Duration: " + config.getDuration());
+        System.out.println("\nCreated " + cameras.size() + " Cameras:");
+        for (Camera c : cameras) {
+            System.out.println("  Camera id=" + c.getId() + ", freq=" + c.getFrequency()
+                               + ", #detectionEntries=" + (c.getDetections() == null ? "streamed" : c.getDetections().size()));
+        }
 
-            System.out.println("\nCreated " + cameras.size() + " Cameras:");
-            for (Camera c : cameras) {
-                System.out.println("  Camera id=" + c.getId() + ", freq=" + c.getFrequency()
-                                   + ", #detectionEntries=" + c.getDetections().size());
-            }
+        System.out.println("\nCreated " + lidarWorkers.size() + " LiDar Workers:");
+        for (LiDarWorkerTracker lw : lidarWorkers) {
+            System.out.println("  LiDar id=" + lw.getId() + ", freq=" + lw.getFrequency());
+        }
+
+        if (db.isComplete()) {
+            System.out.println("\nLiDarDataBase has " + db.size() + " stampedCloudPoints entries.");
+        }
+        else {
+            System.out.println("\nLiDarDataBase streams its entries, " + prefetchTicks + " ticks ahead.");
+        }
 
-            System.out.println("\nCreated " + lidarWorkers.size() + " LiDar Workers:");
-            for (LiDarWorkerTracker lw : lidarWorkers) {
-                System.out.println("  LiDar id=" + lw.getId() + ", freq=" + lw.getFrequency());
+        System.out.println("\nCreated GPSIMU with #poses=" + poseData.size());
+
+        // LiDAR workers listed as remote run in GurionRockWorker processes, linked by their own bus,
+        // which must be in place before the services are created
+        BridgedMessageBus remoteBus = null;
+        List<Integer> remoteLidars = new ArrayList<>();
+        if (config.getRemoteWorkers() != null) {
+            remoteBus = RemoteWorkers.host(config.getRemoteWorkers(), configDir);
+            remoteLidars = config.getRemoteWorkers().getLidarIds();
+        }
+
+        // 8) Create MicroServices
+        List<CameraService> cameraServices = new ArrayList<>();
+        for (Camera cam : cameras) {
+            cameraServices.add(new CameraService(cam));
+        }
+
+        // LiDarWorkerService: pass the worker + the db or parse logic
+        List<LiDarService> lidarServices = new ArrayList<>();
+        for (LiDarWorkerTracker lw : lidarWorkers) {
+            if (remoteLidars.contains(lw.getId())) {
+                continue;
             }
+            LiDarService ls = new LiDarService(lw); 
+            // If your LiDarWorkerService constructor expects a Map<id,List<StampedCloudPoints>> 
+            // you can build that from db.find() and its getters.
+            // Or pass 'db' directly if your constructor allows it.
+            lidarServices.add(ls);
+        }
 
-            System.out.println("\nLiDarDataBase has " + db.getCloudPoints().size() + " stampedCloudPoints entries.");
+        // Message counts and latencies can be watched live with jconsole or any JMX client
+        SimulationContext context = SimulationContext.current();
+        MessageBusImpl.getInstance().getMetrics()
+                .registerMBean(context == SimulationContext.DEFAULT ? null : context.getName());
 
-            System.out.println("\nCreated GPSIMU with #poses=" + poseData.size());
+        MessageLog.Writer busLog = null;
+        try {
+            // Detections of one camera stay on one worker when routing is "sticky"
+            String routing = config.getLiDarWorkers().getRouting();
+            if (routing != null) {
+                MessageBusImpl.getInstance().setRoutingStrategy(DetectObjectsEvent.class,
+                        RoutingStrategies.<DetectObjectsEvent>byName(routing, DetectObjectsEvent::getCameraId));
+            }
 
-            // 8) Create MicroServices
-            List<CameraService> cameraServices = new ArrayList<>();
-            for (Camera cam : cameras) {
-                cameraServices.add(new CameraService(cam));
+            // Bounded mailboxes must be set up before the services register
+            if (config.getMailboxes() != null) {
+                for (MailboxConfig mc : config.getMailboxes()) {
+                    int capacity = mc.getCapacity();
+                    OverflowPolicy policy = OverflowPolicy.valueOf(mc.getOverflow());
+                    MessageBusImpl.getInstance().setMailboxFactory(mc.getService(), () -> new BoundedMailbox(capacity, policy));
+                }
             }
 
-            // LiDarWorkerService: pass the worker + the db or parse logic
-            List<LiDarService> lidarServices = new ArrayList<>();
-            for (LiDarWorkerTracker lw : lidarWorkers) {
-                LiDarService ls = new LiDarService(lw); 
-                // If your LiDarWorkerService constructor expects a Map<id,List<StampedCloudPoints>> 
-                // you can build that from db.getCloudPoints().
-                // Or pass 'db' directly if your constructor allows it.
-                lidarServices.add(ls);
+            // Everything sent from the first subscription on is recorded, for GurionRockReplayer
+            if (config.getBusLog() != null) {
+                busLog = GurionRockReplayer.startRecording(configDir.resolve(config.getBusLog()));
             }
 
             // PoseService
             PoseService poseService = new PoseService(gpsimu);
 
             // TimeService
-            TimeService timeService = new TimeService(config.getTickTime(), config.getDuration());
+            TickSchedule schedule = null;
+            if ("discrete-event".equals(config.getClock())) {
+                schedule = new TickSchedule(cameras, lidarWorkers, poseData, config.getDuration());
+                System.out.println("\nDiscrete-event clock: " + schedule.size() + " of " + config.getDuration() + " ticks scheduled");
+            }
+            else if (config.getClock() != null && !config.getClock().equals("paced") && !config.getClock().equals("lockstep")) {
+                throw new IllegalArgumentException("Unknown clock " + config.getClock());
+            }
+            TimeService timeService = new TimeService(config.getTickTime(), tickUnit, config.getDuration(), schedule,
+                    "lockstep".equals(config.getClock()));
 
             // (Optionally) FusionSlamService
             FusionSlamService fusionService = new FusionSlamService(FusionSlam.getInstance(), new File(configPath).getParent());
@@ -124,35 +244,101 @@ public class GurionRockRunner {
             int numServices = cameraServices.size() + lidarServices.size() + 1 + 1; // Cameras + LiDars + PoseService + FusionSlamService
             Latch.getInstance(numServices);
 
+            // Virtual threads need Java 21; the default stays one platform thread per service
+            ExecutionMode mode = ExecutionMode.fromConfig(config.getExecutionMode());
+            ThreadFactory threadFactory = mode.threadFactory();
+            ActorScheduler scheduler = mode == ExecutionMode.ACTOR ? new ActorScheduler() : null;
             List<Thread> threads = new ArrayList<>();
 
-            Thread pose = new Thread(poseService);
-            threads.add(pose);
-            pose.start();
-
+            startService(poseService, threadFactory, scheduler, threads);
             for (CameraService cs : cameraServices) {
-                Thread t = new Thread(cs);
-                threads.add(t);
-                t.start();
+                startService(cs, threadFactory, scheduler, threads);
             }
-
             for (LiDarService ls : lidarServices) {
-                Thread t = new Thread(ls);
-                threads.add(t);
-                t.start();
+                startService(ls, threadFactory, scheduler, threads);
             }
-
-            Thread fusion = new Thread(fusionService);
-            threads.add(fusion);
-            fusion.start();
+            startService(fusionService, threadFactory, scheduler, threads);
 
             Latch.getInstance(0).geLatch().await();
-            new Thread(timeService).start();
+            phase = startup.recordSince("services", phase);
+            if (remoteBus != null) {
+                System.out.println("\nWaiting for remote LiDAR workers " + remoteLidars + "...");
+                remoteBus.awaitReady();
+                startup.recordSince("remote LiDAR workers", phase);
+            }
+            startup.print();
+            // TimeService sleeps between ticks, so it keeps a thread of its own even in actor mode
+            startService(timeService, threadFactory, null, threads);
 
             System.out.println("\nAll microservices started. Simulation is running...");
 
-        } catch (Exception e) {
-            e.printStackTrace();
+            // Virtual threads and pool threads are daemons, so the JVM must not exit before the services do
+            for (Thread t : threads) {
+                t.join();
+            }
+            if (scheduler != null) {
+                scheduler.awaitTermination();
+            }
+
+            if (config.getMailboxes() != null) {
+                printMailboxOverflows();
+            }
+            LatencyHistogram jitter = StatisticalFolder.getInstance().getTickJitter();
+            if (jitter.getCount() > 0) {
+                System.out.printf("%nTick jitter over %d ticks: p50=%.1f us, p99=%.1f us, max=%.1f us%n",
+                                  jitter.getCount(), jitter.getP50Micros(), jitter.getP99Micros(), jitter.getMaxMicros());
+            }
+        } finally {
+            // Also after a failed run, so the bus log is flushed and no thread, channel or socket is left open
+            try {
+                // A crash may have stopped the sensors before the end of their data
+                for (PrefetchingListReader<StampedDetectedObjects> detections : detectionStreams) {
+                    detections.close();
+                }
+                db.close();
+                if (remoteBus != null) {
+                    remoteBus.close();
+                }
+                if (busLog != null) {
+                    MessageBusImpl.getInstance().setRecorder(null);
+                    busLog.close();
+                    System.out.println("\nRecorded the bus traffic to " + configDir.resolve(config.getBusLog()));
+                }
+            } finally {
+                MessageBusImpl.getInstance().getMetrics().unregisterMBean();
+            }
         }
     }
+
+    // Runs the service as an actor when a scheduler is given, on a new thread otherwise
+    private static void startService(MicroService service, ThreadFactory threadFactory,
+                                     ActorScheduler scheduler, List<Thread> threads) {
+        if (scheduler != null) {
+            scheduler.start(service);
+        } else {
+            Thread t = threadFactory.newThread(service);
+            threads.add(t);
+            t.start();
+        }
+    }
+
+    private static TimeUnit tickUnit(String unit) {
+        if (unit == null || unit.equals("s")) {
+            return TimeUnit.SECONDS;
+        }
+        if (unit.equals("ms")) {
+            return TimeUnit.MILLISECONDS;
+        }
+        if (unit.equals("us")) {
+            return TimeUnit.MICROSECONDS;
+        }
+        throw new IllegalArgumentException("Unknown tick unit " + unit);
+    }
+
+    private static void printMailboxOverflows() {
+        System.out.println("\n=== MAILBOX OVERFLOWS ===");
+        MessageBusImpl.getInstance().getBoundedMailboxes().forEach((name, mailbox) ->
+            System.out.println("  " + name + " (" + mailbox.getPolicy() + ", capacity=" + mailbox.getCapacity()
+                               + "): " + mailbox.getOverflowCount()));
+    }
 }
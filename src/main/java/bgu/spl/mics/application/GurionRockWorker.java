@@ -0,0 +1,68 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.BridgedMessageBus;
+import bgu.spl.mics.application.Configuration.LidarConfigItem;
+import bgu.spl.mics.application.objects.LiDarDataBase;
+import bgu.spl.mics.application.objects.LiDarWorkerTracker;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.services.LiDarService;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Runs one LiDAR worker of a simulation in a process of its own, for a configuration whose
+ * "RemoteWorkers" lists it. Start the simulation with {@link GurionRockRunner} first, then one
+ * worker per listed id; the simulation waits for all of them before the first tick.
+ * <p>
+ * The objects it tracks are counted by the simulation, which sends the total back, so the
+ * worker stops on the same count as a local one would. Its last frames stay in this process.
+ */
+public class GurionRockWorker {
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: <configPath> <lidarId>");
+            return;
+        }
+
+        String configPath = args[0];
+        int lidarId = Integer.parseInt(args[1]);
+        try {
+            Configuration config = ConfigurationParser.parseConfigurationFile(configPath);
+            if (config.getRemoteWorkers() == null || !config.getRemoteWorkers().getLidarIds().contains(lidarId)) {
+                System.err.println("LiDAR worker " + lidarId + " is not listed in RemoteWorkers of " + configPath);
+                return;
+            }
+            LidarConfigItem item = null;
+            for (LidarConfigItem candidate : config.getLiDarWorkers().getLidarConfigurations()) {
+                if (candidate.getId() == lidarId) {
+                    item = candidate;
+                }
+            }
+            if (item == null) {
+                System.err.println("No LiDAR worker " + lidarId + " in " + configPath);
+                return;
+            }
+
+            Path configDir = Paths.get(configPath).getParent();
+            LiDarDataBase.getInstance(configDir.resolve(config.getLiDarWorkers().getLidarsDataPath()).toString());
+
+            // The bus must be in place before the service is created
+            BridgedMessageBus bus = RemoteWorkers.connect(config.getRemoteWorkers(), configDir, lidarId);
+            Latch.getInstance(1);
+            Thread thread = new Thread(new LiDarService(new LiDarWorkerTracker(item.getId(), item.getFrequency())));
+            thread.start();
+            Latch.getInstance(0).geLatch().await();
+            bus.ready();
+            System.out.println("LiDAR worker " + lidarId + " connected");
+
+            thread.join();
+            bus.close();
+            System.out.println("LiDAR worker " + lidarId + " done, the simulation tracked "
+                               + StatisticalFolder.getInstance().getNumTrackedObjects() + " objects");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package bgu.spl.mics.application;
+import bgu.spl.mics.SimulationContext;
 import java.util.concurrent.CountDownLatch;
 
 public class Latch {
     private final CountDownLatch latch;
-    private static volatile  Latch instance = null;
 
     /**
      * Returns the singleton instance of LiDarDataBase.
@@ -17,15 +17,7 @@ public class Latch {
     }
 
     public static Latch getInstance(int count){
-        if (instance == null) {
-            synchronized(Latch.class) {
-                if (instance == null) {
-                    Latch x = new Latch(count);
-                    instance = x;
-                }
-            }
-        }
-        return instance;
+        return SimulationContext.current().get(Latch.class, () -> new Latch(count));
     }
 
     public CountDownLatch geLatch() {
@@ -0,0 +1,33 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.application.objects.LiDarDataFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts a lidar_data.json file to the binary form of {@link LiDarDataFile}, which the
+ * simulation maps into memory instead of parsing. Point "lidars_data_path" of the
+ * configuration at the converted file to use it.
+ */
+public class LiDarDataConverter {
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: <lidarDataJson> <outputPath>");
+            return;
+        }
+
+        Path json = Paths.get(args[0]);
+        Path out = Paths.get(args[1]);
+        try {
+            long start = System.nanoTime();
+            int entries = LiDarDataFile.convert(json, out);
+            System.out.printf("Converted %d entries of %s to %s (%,d bytes, was %,d) in %.1f ms%n",
+                              entries, json, out, Files.size(out), Files.size(json), (System.nanoTime() - start) / 1e6);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
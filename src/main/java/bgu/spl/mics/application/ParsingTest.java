@@ -1,7 +1,7 @@
 package bgu.spl.mics.application;
 
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
-import bgu.spl.mics.application.objects.StampedCloudPoints;
+import bgu.spl.mics.application.objects.LiDarDataBase;
 import bgu.spl.mics.application.objects.Pose;
 import java.io.IOException;
 import java.util.List;
@@ -37,20 +37,30 @@ public class ParsingTest {
 
             // 2a) Print camera data
             Map<String, List<StampedDetectedObjects>> camData = parsedData.getCameraData();
-            System.out.println("\nCamera data parsed. # of camera keys: " + camData.size());
-            camData.forEach((key, detections) -> {
-                System.out.println("[CameraKey=" + key + "] -> # of detections: " + detections.size());
-                for (StampedDetectedObjects sdo : detections) {
-                    System.out.println("  time=" + sdo.getTime() + ", objects=" + sdo.getDetectedObjects().size());
-                }
-            });
+            if (camData == null) {
+                System.out.println("\nCamera data is streamed, not parsed.");
+            }
+            else {
+                System.out.println("\nCamera data parsed. # of camera keys: " + camData.size());
+                camData.forEach((key, detections) -> {
+                    System.out.println("[CameraKey=" + key + "] -> # of detections: " + detections.size());
+                    for (StampedDetectedObjects sdo : detections) {
+                        System.out.println("  time=" + sdo.getTime() + ", objects=" + sdo.getDetectedObjects().size());
+                    }
+                });
+            }
 
             // 2b) Print LiDAR data
-            List<StampedCloudPoints> lidarList = parsedData.getLidarData();
-            System.out.println("\nLiDAR data parsed. # of entries: " + lidarList.size());
-            for (StampedCloudPoints scp : lidarList) {
-                System.out.println(" time=" + scp.getTime() + ", id=" + scp.getId()
-                                   + ", #points=" + scp.getCloudPoints().size());
+            LiDarDataBase lidarData = parsedData.getLidarData();
+            if (lidarData == null) {
+                System.out.println("\nLiDAR data is streamed, not parsed.");
+            }
+            else {
+                System.out.println("\nLiDAR data parsed. # of entries: " + lidarData.size());
+                for (int entry = 0; entry < lidarData.size(); ++entry) {
+                    System.out.println(" time=" + lidarData.getTime(entry) + ", id=" + lidarData.getId(entry)
+                                       + ", #points=" + lidarData.getPointCount(entry));
+                }
             }
 
             // 2c) Print pose data
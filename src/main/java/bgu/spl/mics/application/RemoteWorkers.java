@@ -0,0 +1,101 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.BridgedMessageBus;
+import bgu.spl.mics.Message;
+import bgu.spl.mics.SharedMemoryMessageBus;
+import bgu.spl.mics.SocketMessageBus;
+import bgu.spl.mics.application.Configuration.RemoteWorkersConfig;
+import bgu.spl.mics.application.messages.SensorMessageCodec;
+import bgu.spl.mics.application.messages.TrackedObjectsBroadcast;
+import bgu.spl.mics.application.messages.TrackedObjectsEvent;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Creates the message bus linking the simulation to LiDAR workers in other processes, as
+ * described by the "RemoteWorkers" part of the configuration. Creating it installs it as the
+ * bus of the current simulation, so it must happen before the services are created.
+ */
+final class RemoteWorkers {
+    // How long a worker waits for the simulation to set up its link
+    private static final long CONNECT_TIMEOUT_MILLIS = 60_000;
+
+    private RemoteWorkers() {
+    }
+
+    /**
+     * Simulation side: opens a link for every remote LiDAR worker. The objects the workers
+     * track are counted here as their TrackedObjectsEvents arrive, and the new total is sent
+     * back to all the workers, so that the output and their termination see the whole count.
+     */
+    static BridgedMessageBus host(RemoteWorkersConfig config, Path configDir) throws IOException {
+        BridgedMessageBus bus;
+        if (isTcp(config)) {
+            SocketMessageBus socketBus = new SocketMessageBus(new SensorMessageCodec());
+            socketBus.listen(socketAddress(config), config.getLidarIds().size());
+            bus = socketBus;
+        }
+        else {
+            SharedMemoryMessageBus sharedBus = new SharedMemoryMessageBus(directory(config, configDir), new SensorMessageCodec());
+            for (int id : config.getLidarIds()) {
+                sharedBus.accept(peerName(id));
+            }
+            bus = sharedBus;
+        }
+        bus.setInboundListener(countTracked(bus, StatisticalFolder.getInstance()));
+        return bus;
+    }
+
+    private static Consumer<Message> countTracked(BridgedMessageBus bus, StatisticalFolder stats) {
+        return m -> {
+            if (m instanceof TrackedObjectsEvent) {
+                stats.addTrackedObjects(((TrackedObjectsEvent) m).getTrackedObjects().size());
+                bus.sendBroadcast(new TrackedObjectsBroadcast(stats.getNumTrackedObjects()));
+            }
+        };
+    }
+
+    /**
+     * Worker side: joins the link the simulation opened for LiDAR worker {@code lidarId}.
+     */
+    static BridgedMessageBus connect(RemoteWorkersConfig config, Path configDir, int lidarId)
+            throws IOException, InterruptedException {
+        if (isTcp(config)) {
+            SocketMessageBus bus = new SocketMessageBus(new SensorMessageCodec());
+            bus.connect(peerName(lidarId), socketAddress(config), CONNECT_TIMEOUT_MILLIS);
+            return bus;
+        }
+        SharedMemoryMessageBus bus = new SharedMemoryMessageBus(directory(config, configDir), new SensorMessageCodec());
+        bus.connect(peerName(lidarId), CONNECT_TIMEOUT_MILLIS);
+        return bus;
+    }
+
+    private static boolean isTcp(RemoteWorkersConfig config) {
+        return "tcp".equals(config.getTransport());
+    }
+
+    // "host:port"
+    private static InetSocketAddress socketAddress(RemoteWorkersConfig config) {
+        String address = config.getAddress();
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    private static Path directory(RemoteWorkersConfig config, Path configDir) {
+        if (config.getTransport() != null && !config.getTransport().equals("shm")) {
+            throw new IllegalArgumentException("Unknown transport " + config.getTransport());
+        }
+        return configDir.resolve(config.getAddress());
+    }
+
+    private static String peerName(int lidarId) {
+        return "lidar-" + lidarId;
+    }
+}
@@ -0,0 +1,53 @@
+package bgu.spl.mics.application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The time each phase of starting a simulation took, up to its first tick, printed so that
+ * the time to the first tick can be followed as the inputs grow.
+ */
+public class StartupReport {
+    private final long start;
+    private final Map<String, Long> phases;
+
+    public StartupReport() {
+        start = System.nanoTime();
+        phases = new LinkedHashMap<>();
+    }
+
+    /**
+     * Records that {@code phase} took {@code nanos}; phases are printed in the order recorded.
+     */
+    public synchronized void record(String phase, long nanos) {
+        phases.put(phase, nanos);
+    }
+
+    /**
+     * Records that {@code phase} ran from {@code since} until now.
+     *
+     * @return now, the start of the next phase.
+     */
+    public long recordSince(String phase, long since) {
+        long now = System.nanoTime();
+        record(phase, now - since);
+        return now;
+    }
+
+    /**
+     * @return the nanoseconds since the report was created.
+     */
+    private long elapsed() {
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Prints every phase and the time from the start until now, when the first tick is sent.
+     */
+    public synchronized void print() {
+        long total = elapsed();
+        System.out.println("\n=== STARTUP ===");
+        phases.forEach((phase, nanos) -> System.out.printf("  %-28s %8.1f ms%n", phase, nanos / 1e6));
+        System.out.printf("  %-28s %8.1f ms%n", "time to first tick", total / 1e6);
+    }
+}
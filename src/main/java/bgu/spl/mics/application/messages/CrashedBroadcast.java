@@ -1,8 +1,13 @@
 package bgu.spl.mics.application.messages;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ControlMessage;
 
-public class CrashedBroadcast implements Broadcast {
+/**
+ * A broadcast telling every service that a sensor failed and the simulation must stop.
+ * It overtakes the messages already queued for its receivers.
+ */
+public class CrashedBroadcast implements Broadcast, ControlMessage {
     private final String faultySensor;
     private final String Error;
 
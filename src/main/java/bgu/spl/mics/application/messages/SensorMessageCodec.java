@@ -0,0 +1,180 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Message;
+import bgu.spl.mics.MessageCodec;
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of the simulation's messages for buses spanning several processes.
+ * <p>
+ * Every message starts with a one-byte tag followed by its fields in declaration order:
+ * ints and coordinates as fixed-size numbers, strings as a length and UTF-8 bytes, lists as a
+ * count and their elements. Event results are Booleans, encoded as one byte.
+ */
+public class SensorMessageCodec implements MessageCodec {
+    private static final byte TICK = 1;
+    private static final byte TERMINATED = 2;
+    private static final byte CRASHED = 3;
+    private static final byte DETECT_OBJECTS = 4;
+    private static final byte TRACKED_OBJECTS = 5;
+    private static final byte POSE = 6;
+    private static final byte TRACKED_TOTAL = 7;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+
+    @Override
+    public boolean supports(Class<? extends Message> type) {
+        return type == TickBroadcast.class || type == TerminatedBroadcast.class || type == CrashedBroadcast.class
+                || type == DetectObjectsEvent.class || type == TrackedObjectsEvent.class || type == PoseEvent.class
+                || type == TrackedObjectsBroadcast.class;
+    }
+
+    @Override
+    public void encode(Message m, ByteBuffer out) {
+        if (m instanceof TickBroadcast) {
+            TickBroadcast tick = (TickBroadcast) m;
+            out.put(TICK).putInt(tick.getFirstTick()).putInt(tick.getCurrentTick());
+        }
+        else if (m instanceof TerminatedBroadcast) {
+            TerminatedBroadcast terminated = (TerminatedBroadcast) m;
+            out.put(TERMINATED).put(terminated.isControl() ? TRUE : FALSE);
+            MessageCodec.putString(out, terminated.getSenderClass().getName());
+        }
+        else if (m instanceof CrashedBroadcast) {
+            CrashedBroadcast crashed = (CrashedBroadcast) m;
+            out.put(CRASHED);
+            MessageCodec.putString(out, crashed.getfaultySensor());
+            MessageCodec.putString(out, crashed.getErrorDescription());
+        }
+        else if (m instanceof DetectObjectsEvent) {
+            DetectObjectsEvent detect = (DetectObjectsEvent) m;
+            StampedDetectedObjects stamped = detect.getStampedObjects();
+            out.put(DETECT_OBJECTS).putInt(detect.getCameraId()).putInt(stamped.getTime());
+            out.putInt(stamped.getDetectedObjects().size());
+            for (DetectedObject object : stamped.getDetectedObjects()) {
+                MessageCodec.putString(out, object.getId());
+                MessageCodec.putString(out, object.getDescription());
+            }
+        }
+        else if (m instanceof TrackedObjectsEvent) {
+            List<TrackedObject> tracked = ((TrackedObjectsEvent) m).getTrackedObjects();
+            out.put(TRACKED_OBJECTS).putInt(tracked.size());
+            for (TrackedObject object : tracked) {
+                MessageCodec.putString(out, object.getId());
+                out.putInt(object.getTime());
+                MessageCodec.putString(out, object.getDescription());
+                out.putInt(object.getCoordinates().size());
+                for (CloudPoint point : object.getCoordinates()) {
+                    out.putDouble(point.getX()).putDouble(point.getY());
+                }
+            }
+        }
+        else if (m instanceof PoseEvent) {
+            Pose pose = ((PoseEvent) m).getPose();
+            out.put(POSE).putInt(pose.getTime()).putFloat(pose.getX()).putFloat(pose.getY()).putFloat(pose.getYaw());
+        }
+        else if (m instanceof TrackedObjectsBroadcast) {
+            out.put(TRACKED_TOTAL).putInt(((TrackedObjectsBroadcast) m).getTotal());
+        }
+        else {
+            throw new IllegalArgumentException("Cannot encode " + m.getClass().getName());
+        }
+    }
+
+    @Override
+    public Message decode(ByteBuffer in) {
+        byte tag = in.get();
+        switch (tag) {
+            case TICK: {
+                int firstTick = in.getInt();
+                return new TickBroadcast(firstTick, in.getInt());
+            }
+            case TERMINATED: {
+                boolean shutdown = in.get() == TRUE;
+                return new TerminatedBroadcast(senderClass(MessageCodec.getString(in)), shutdown);
+            }
+            case CRASHED: {
+                String faultySensor = MessageCodec.getString(in);
+                return new CrashedBroadcast(faultySensor, MessageCodec.getString(in));
+            }
+            case DETECT_OBJECTS: {
+                int cameraId = in.getInt();
+                int time = in.getInt();
+                int count = in.getInt();
+                List<DetectedObject> objects = new ArrayList<>(count);
+                for (int i = 0; i < count; ++i) {
+                    String id = MessageCodec.getString(in);
+                    objects.add(new DetectedObject(id, MessageCodec.getString(in)));
+                }
+                return new DetectObjectsEvent(cameraId, new StampedDetectedObjects(time, objects));
+            }
+            case TRACKED_OBJECTS: {
+                int count = in.getInt();
+                List<TrackedObject> tracked = new ArrayList<>(count);
+                for (int i = 0; i < count; ++i) {
+                    String id = MessageCodec.getString(in);
+                    int time = in.getInt();
+                    String description = MessageCodec.getString(in);
+                    int points = in.getInt();
+                    List<CloudPoint> coordinates = new ArrayList<>(points);
+                    for (int j = 0; j < points; ++j) {
+                        double x = in.getDouble();
+                        coordinates.add(new CloudPoint(x, in.getDouble()));
+                    }
+                    tracked.add(new TrackedObject(id, time, description, coordinates));
+                }
+                return new TrackedObjectsEvent(tracked);
+            }
+            case POSE: {
+                int time = in.getInt();
+                float x = in.getFloat();
+                float y = in.getFloat();
+                return new PoseEvent(new Pose(time, x, y, in.getFloat()));
+            }
+            case TRACKED_TOTAL:
+                return new TrackedObjectsBroadcast(in.getInt());
+            default:
+                throw new IllegalArgumentException("Unknown message tag " + tag);
+        }
+    }
+
+    @Override
+    public void encodeResult(Object result, ByteBuffer out) {
+        if (result == null) {
+            out.put(NULL);
+        }
+        else if (result instanceof Boolean) {
+            out.put((Boolean) result ? TRUE : FALSE);
+        }
+        else {
+            throw new IllegalArgumentException("Cannot encode a result of type " + result.getClass().getName());
+        }
+    }
+
+    @Override
+    public Object decodeResult(ByteBuffer in) {
+        byte tag = in.get();
+        return tag == NULL ? null : tag == TRUE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends MicroService> senderClass(String name) {
+        try {
+            return (Class<? extends MicroService>) Class.forName(name);
+        }
+        catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown sender " + name, e);
+        }
+    }
+}
@@ -1,13 +1,34 @@
 package bgu.spl.mics.application.messages;
 
 import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.ControlMessage;
 import bgu.spl.mics.MicroService;
 
-public class TerminatedBroadcast implements Broadcast {
+/**
+ * A broadcast announcing that a service finished.
+ * A service finishing its part of the data flow is delivered in order after the data it sent;
+ * the end of the whole simulation overtakes the messages already queued for its receivers.
+ */
+public class TerminatedBroadcast implements Broadcast, ControlMessage {
     private final Class<? extends MicroService> senderType;
+    private final boolean shutdown;
 
     public TerminatedBroadcast(Class<? extends MicroService> senderType) {
+        this(senderType, false);
+    }
+
+    /**
+     * @param senderType the class of the service that finished.
+     * @param shutdown   true if this ends the whole simulation.
+     */
+    public TerminatedBroadcast(Class<? extends MicroService> senderType, boolean shutdown) {
         this.senderType = senderType;
+        this.shutdown = shutdown;
+    }
+
+    @Override
+    public boolean isControl() {
+        return shutdown;
     }
 
     public Class<? extends MicroService> getSenderClass() {
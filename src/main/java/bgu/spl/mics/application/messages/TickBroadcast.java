@@ -1,20 +1,44 @@
 package bgu.spl.mics.application.messages;
 
-import bgu.spl.mics.Broadcast;
+import bgu.spl.mics.CoalescingBroadcast;
 
 /**
  * A broadcast that carries the current time/tick in the simulation.
  * Sent by the TimeService.
+ * A service that lags behind receives its queued ticks collapsed into one broadcast
+ * covering the ticks from {@link #getFirstTick()} to {@link #getCurrentTick()}.
  */
-public class TickBroadcast implements Broadcast {
+public class TickBroadcast implements CoalescingBroadcast<TickBroadcast> {
     
+    private final int firstTick;
     private final int currentTick;
 
     public TickBroadcast(int currentTick) {
+        this(currentTick, currentTick);
+    }
+
+    /**
+     * A collapsed tick standing for the ticks from {@code firstTick} to {@code currentTick}.
+     */
+    public TickBroadcast(int firstTick, int currentTick) {
+        this.firstTick = firstTick;
         this.currentTick = currentTick;
     }
 
     public int getCurrentTick() {
         return currentTick;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the oldest tick this broadcast stands for; equal to the current tick
+     *         unless queued ticks were collapsed into this one.
+     */
+    public int getFirstTick() {
+        return firstTick;
+    }
+
+    @Override
+    public TickBroadcast coalesce(TickBroadcast newer) {
+        return new TickBroadcast(firstTick, newer.currentTick);
+    }
+}
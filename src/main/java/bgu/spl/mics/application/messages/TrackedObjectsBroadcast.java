@@ -0,0 +1,20 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Broadcast;
+
+/**
+ * A broadcast telling the LiDAR workers how many objects the simulation has tracked so far, as
+ * counted by its sender. Workers in other processes only learn what the others tracked from it,
+ * and stop once the total covers the LiDAR data.
+ */
+public class TrackedObjectsBroadcast implements Broadcast {
+    private final int total;
+
+    public TrackedObjectsBroadcast(int total) {
+        this.total = total;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+}
@@ -1,5 +1,8 @@
 package bgu.spl.mics.application.objects;
 
+import bgu.spl.mics.PrefetchingListReader;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -8,8 +11,10 @@ import java.util.List;
 public class Camera {
     private final int id;
     private final int frequency;   // How many ticks to wait before sending the event
-    private STATUS status;
+    private volatile STATUS status;
     private final List<StampedDetectedObjects> detecedObjectsList;
+    // Set instead of the list when the detections are read as the simulation goes
+    private final PrefetchingListReader<StampedDetectedObjects> detectionStream;
     
     // Optional pointer to the next index of detections to send:
     private int nextDetectionIndex = 0;
@@ -18,9 +23,22 @@ public class Camera {
         this.id = id;
         this.frequency = frequency;
         this.detecedObjectsList = detections;
+        this.detectionStream = null;
         this.status = STATUS.UP;  // for example
     }
 
+    /**
+     * A camera whose detections are read from a file as the simulation goes; it has no
+     * {@link #getDetections()} list.
+     */
+    public Camera(int id, int frequency, PrefetchingListReader<StampedDetectedObjects> detections) {
+        this.id = id;
+        this.frequency = frequency;
+        this.detecedObjectsList = null;
+        this.detectionStream = detections;
+        this.status = STATUS.UP;
+    }
+
     public int getId() {
         return id;
     }
@@ -45,6 +63,40 @@ public class Camera {
         return nextDetectionIndex;
     }
 
+    /**
+     * Takes the next detection to send at {@code tick}, if its time plus the frequency has come.
+     *
+     * @return the detection, or null if the next one is not due yet or there are none left.
+     */
+    public StampedDetectedObjects nextDetection(int tick) {
+        if (detectionStream != null) {
+            try {
+                return detectionStream.poll(tick - frequency);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read the detections of camera " + id, e);
+            }
+        }
+        if (nextDetectionIndex < detecedObjectsList.size()
+            && tick >= detecedObjectsList.get(nextDetectionIndex).getTime() + frequency) {
+            return detecedObjectsList.get(nextDetectionIndex++);
+        }
+        return null;
+    }
+
+    /**
+     * @return whether some detections have not been taken by {@link #nextDetection(int)} yet.
+     */
+    public boolean hasMoreDetections() {
+        if (detectionStream != null) {
+            try {
+                return !detectionStream.isExhausted();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read the detections of camera " + id, e);
+            }
+        }
+        return nextDetectionIndex < detecedObjectsList.size();
+    }
+
         public void addDetectedObject(int time, DetectedObject obj) {
         // Find if there's an existing StampedDetectedObjects with the same time
         for (StampedDetectedObjects stamped : detecedObjectsList) {
@@ -0,0 +1,266 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The storage behind a {@link LiDarDataBase}: the entries, numbered in file order, with their
+ * points and a way to find them by object id and time.
+ * <p>
+ * {@link Indexed} stores them in columns with a hash table, either in arrays, {@link OnHeap},
+ * or mapped from a file by {@link LiDarDataFile}; {@link LiDarStream} keeps only a window of
+ * them around the current tick.
+ */
+abstract class LiDarColumns {
+
+    /**
+     * @return the number of entries, or for a stream, the number read so far.
+     */
+    abstract int size();
+
+    abstract String getId(int entry);
+
+    abstract int getTime(int entry);
+
+    abstract int getPointCount(int entry);
+
+    abstract double getX(int entry, int point);
+
+    abstract double getY(int entry, int point);
+
+    /**
+     * @return the number of the entry of object {@code id} at {@code time}, or -1 if there is none.
+     */
+    abstract int find(String id, int time);
+
+    /**
+     * Makes the entries up to {@code tick} available; for a stream, entries too old to be
+     * looked up again may be dropped.
+     */
+    void advanceTo(int tick) {
+    }
+
+    /**
+     * @return whether {@link #size()} is the number of all the entries.
+     */
+    boolean isComplete() {
+        return true;
+    }
+
+    /**
+     * Stops reading, for a stream.
+     */
+    void close() {
+    }
+
+    static int hash(String id, int time) {
+        int h = 31 * Objects.hashCode(id) + time;
+        // Spread the bits the mask keeps, as consecutive times would otherwise fill runs of slots
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Builds the hash table of {@code entries} entries, at most half full. A repeated entry does
+     * not replace the first, like the scan the table replaced.
+     */
+    static int[] index(int entries, IntFunction<String> ids, IntUnaryOperator times) {
+        int[] slots = new int[Integer.highestOneBit(Math.max(1, entries)) << 2];
+        int mask = slots.length - 1;
+        for (int e = 0; e < entries; ++e) {
+            String id = ids.apply(e);
+            int time = times.applyAsInt(e);
+            int slot = hash(id, time) & mask;
+            while (slots[slot] != 0 && !(times.applyAsInt(slots[slot] - 1) == time
+                                         && Objects.equals(ids.apply(slots[slot] - 1), id))) {
+                slot = (slot + 1) & mask;
+            }
+            if (slots[slot] == 0) {
+                slots[slot] = e + 1;
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Columns of the id, time and first point of every entry, the x and y of the points of all
+     * entries one after the other, and an open-addressed hash table of the entries by object id
+     * and time.
+     */
+    abstract static class Indexed extends LiDarColumns {
+
+        /**
+         * @return the position of the first point of {@code entry} in the point columns; the
+         *         position for {@link #size()} is the number of points.
+         */
+        abstract long getFirstPoint(int entry);
+
+        abstract double getX(long point);
+
+        abstract double getY(long point);
+
+        /**
+         * @return the number of slots of the hash table, a power of two.
+         */
+        abstract int getSlotCount();
+
+        /**
+         * @return the number of the entry in {@code slot} plus one, or 0 if the slot is empty.
+         */
+        abstract int getSlot(int slot);
+
+        @Override
+        int getPointCount(int entry) {
+            return (int) (getFirstPoint(entry + 1) - getFirstPoint(entry));
+        }
+
+        @Override
+        double getX(int entry, int point) {
+            return getX(getFirstPoint(entry) + point);
+        }
+
+        @Override
+        double getY(int entry, int point) {
+            return getY(getFirstPoint(entry) + point);
+        }
+
+        @Override
+        int find(String id, int time) {
+            int mask = getSlotCount() - 1;
+            for (int slot = hash(id, time) & mask; ; slot = (slot + 1) & mask) {
+                int entry = getSlot(slot) - 1;
+                if (entry < 0) {
+                    return -1;
+                }
+                if (getTime(entry) == time && Objects.equals(getId(entry), id)) {
+                    return entry;
+                }
+            }
+        }
+    }
+
+    /**
+     * Columns in arrays, filled from parsed entries or read from JSON.
+     */
+    static final class OnHeap extends Indexed {
+        private final String[] ids;
+        private final int[] times;
+        private final int[] firstPoint;
+        private final double[] xs;
+        private final double[] ys;
+        private final int[] slots;
+
+        OnHeap(List<StampedCloudPoints> cloudPoints) {
+            int entries = cloudPoints.size();
+            ids = new String[entries];
+            times = new int[entries];
+            firstPoint = new int[entries + 1];
+            int points = 0;
+            for (int e = 0; e < entries; ++e) {
+                StampedCloudPoints stp = cloudPoints.get(e);
+                ids[e] = stp.getId();
+                times[e] = stp.getTime();
+                firstPoint[e] = points;
+                points += stp.getCloudPoints() == null ? 0 : stp.getCloudPoints().size();
+            }
+            firstPoint[entries] = points;
+
+            xs = new double[points];
+            ys = new double[points];
+            for (int e = 0; e < entries; ++e) {
+                List<List<Double>> coordinates = cloudPoints.get(e).getCloudPoints();
+                for (int i = 0, p = firstPoint[e]; p < firstPoint[e + 1]; ++i, ++p) {
+                    List<Double> coordinate = coordinates.get(i);
+                    xs[p] = coordinate.get(0);
+                    ys[p] = coordinate.get(1);
+                }
+            }
+            slots = index(entries, e -> ids[e], e -> times[e]);
+        }
+
+        private OnHeap(String[] ids, int[] times, int[] firstPoint, double[] xs, double[] ys) {
+            this.ids = ids;
+            this.times = times;
+            this.firstPoint = firstPoint;
+            this.xs = xs;
+            this.ys = ys;
+            slots = index(ids.length, e -> ids[e], e -> times[e]);
+        }
+
+        /**
+         * Reads the JSON list of entries {@code reader} is at straight into columns, without
+         * the lists Gson would build for it.
+         *
+         * @throws IOException if it cannot be read or is not a list of entries with ids.
+         */
+        static OnHeap read(JsonReader reader) throws IOException {
+            LiDarJsonEntry entry = new LiDarJsonEntry();
+            LiDarJsonEntry.Points points = new LiDarJsonEntry.Points();
+            String[] ids = new String[1024];
+            int[] times = new int[1024];
+            int[] firstPoint = new int[1025];
+            int entries = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                entry.read(reader, points);
+                if (entries == ids.length) {
+                    ids = Arrays.copyOf(ids, entries * 2);
+                    times = Arrays.copyOf(times, entries * 2);
+                    firstPoint = Arrays.copyOf(firstPoint, entries * 2 + 1);
+                }
+                ids[entries] = entry.getId();
+                times[entries] = entry.getTime();
+                firstPoint[++entries] = points.size();
+            }
+            reader.endArray();
+            return new OnHeap(Arrays.copyOf(ids, entries), Arrays.copyOf(times, entries),
+                              Arrays.copyOf(firstPoint, entries + 1), points.copyXs(), points.copyYs());
+        }
+
+        @Override
+        int size() {
+            return ids.length;
+        }
+
+        @Override
+        String getId(int entry) {
+            return ids[entry];
+        }
+
+        @Override
+        int getTime(int entry) {
+            return times[entry];
+        }
+
+        @Override
+        long getFirstPoint(int entry) {
+            return firstPoint[entry];
+        }
+
+        @Override
+        double getX(long point) {
+            return xs[(int) point];
+        }
+
+        @Override
+        double getY(long point) {
+            return ys[(int) point];
+        }
+
+        @Override
+        int getSlotCount() {
+            return slots.length;
+        }
+
+        @Override
+        int getSlot(int slot) {
+            return slots[slot];
+        }
+    }
+}
@@ -1,22 +1,36 @@
 package bgu.spl.mics.application.objects;
 
-import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import bgu.spl.mics.ListParser;
+import bgu.spl.mics.SimulationContext;
 
 /**
- * LiDarDataBase is a singleton class responsible for managing LiDAR data.
+ * LiDarDataBase is a singleton class, one per {@link SimulationContext}, responsible for managing LiDAR data.
  * It provides access to cloud point data and other relevant information for tracked objects.
+ * <p>
+ * The entries are indexed by object id and time when loaded, so a lookup does not depend on
+ * the size of the data.
+ * <p>
+ * The points are stored in columns: the x and y of all the points of all the entries, in file
+ * order, each in one array, plus the position of the first point of every entry. The z of the
+ * points is not kept. An entry is referred to by its number, see {@link #find(String, int)},
+ * and its points are read with {@link #getX(int, int)} and {@link #getY(int, int)}, which
+ * allocate nothing.
+ * <p>
+ * The data file is either the JSON list of entries, read in one pass onto the heap, or the
+ * same data converted by {@link LiDarDataFile#convert}, which is mapped into memory instead
+ * and read only as far as it is used. A JSON file can also be streamed instead, see
+ * {@link #getStreamingInstance}, keeping only the entries around the current tick.
  */
 public class LiDarDataBase {
-    private List<StampedCloudPoints> cloudPoints;
-    private static volatile LiDarDataBase instance = null;
+    private LiDarColumns columns;
 
     /**
      * Returns the singleton instance of LiDarDataBase.
@@ -27,43 +41,141 @@ public class LiDarDataBase {
 
     private LiDarDataBase(String filePath) {
         try {
-            Type listType = new TypeToken<List<StampedCloudPoints>>(){}.getType();
-            List<StampedCloudPoints> potentialCloudPoints = ListParser.parse(filePath, listType);
-            if (potentialCloudPoints != null) {
-                this.cloudPoints = potentialCloudPoints;
-            }
-            else {
-                // System.out.println("Failed to parse lidar_data file.");
-                cloudPoints = new ArrayList<>();
-            }
+            columns = read(Paths.get(filePath));
         }
-        catch (IOException | JsonIOException | JsonSyntaxException e) {
-            this.cloudPoints = new ArrayList<>();
+        catch (IOException e) {
+            columns = new LiDarColumns.OnHeap(new ArrayList<>());
         }
     }
 
+    LiDarDataBase(List<StampedCloudPoints> cloudPoints) {
+        this(new LiDarColumns.OnHeap(cloudPoints));
+    }
+
+    LiDarDataBase(LiDarColumns columns) {
+        this.columns = columns;
+    }
+
     public static LiDarDataBase getInstance(String filePath){
-        if (instance == null) {
-            synchronized(LiDarDataBase.class) {
-                if (instance == null) {
-                    LiDarDataBase x = new LiDarDataBase(filePath);
-                    instance = x;
-                }
-            }
+        return SimulationContext.current().get(LiDarDataBase.class, () -> new LiDarDataBase(filePath));
+    }
+
+    /**
+     * Reads a LiDAR data file into a database of no context, e.g. on a loader thread; make it
+     * the instance with {@link SimulationContext#set} before anything looks it up. Unlike
+     * {@link #getInstance(String)}, a file that cannot be read is an error rather than empty data.
+     *
+     * @throws IOException if the file cannot be read or is not LiDAR data.
+     */
+    public static LiDarDataBase load(String filePath) throws IOException {
+        return new LiDarDataBase(read(Paths.get(filePath)));
+    }
+
+    // The JSON is read in one pass straight into columns
+    private static LiDarColumns read(Path path) throws IOException {
+        if (LiDarDataFile.isBinary(path)) {
+            return LiDarDataFile.open(path);
+        }
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            return LiDarColumns.OnHeap.read(reader);
+        }
+        catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(path + " is not a list of LiDAR entries", e);
         }
-        return instance;
     }
 
-    public StampedCloudPoints getStampedCloudPoints(String id, int time) {
-        for (StampedCloudPoints stp : cloudPoints) {
-            if (stp.getTime() == time && stp.getId().equals(id)) {
-                return stp;
-            }
+    /**
+     * Returns the singleton instance, reading a JSON file as the simulation goes rather than
+     * up front: {@link #advanceTo(int)} makes the entries up to a tick available, and entries
+     * more than {@code retention} ticks old are dropped. The entries must be in time order.
+     * A binary file is mapped as by {@link #getInstance(String)}.
+     *
+     * @param ticksAhead how many ticks beyond the current one to read ahead.
+     */
+    public static LiDarDataBase getStreamingInstance(String filePath, int ticksAhead, int retention) throws IOException {
+        Path path = Paths.get(filePath);
+        if (LiDarDataFile.isBinary(path)) {
+            return getInstance(filePath);
         }
-        return null;
+        return SimulationContext.current().get(LiDarDataBase.class,
+                () -> new LiDarDataBase(new LiDarStream(path, ticksAhead, retention)));
+    }
+
+    /**
+     * Makes the entries up to {@code tick} available, waiting for them to be read if streamed.
+     */
+    public void advanceTo(int tick) {
+        columns.advanceTo(tick);
     }
 
-    public List<StampedCloudPoints> getCloudPoints() {
-        return cloudPoints;
+    /**
+     * @return whether {@link #size()} counts all the entries; when streamed, only once the
+     *         last of them has been read.
+     */
+    public boolean isComplete() {
+        return columns.isComplete();
+    }
+
+    /**
+     * Stops reading a streamed file before its end.
+     */
+    public void close() {
+        columns.close();
+    }
+
+    /**
+     * @return the number of the entry of object {@code id} at {@code time}, or -1 if there is none.
+     */
+    public int find(String id, int time) {
+        return columns.find(id, time);
+    }
+
+    /**
+     * @return the number of entries, each the points of one object at one time; when streamed,
+     *         the number read so far.
+     */
+    public int size() {
+        return columns.size();
+    }
+
+    public String getId(int entry) {
+        return columns.getId(entry);
+    }
+
+    public int getTime(int entry) {
+        return columns.getTime(entry);
+    }
+
+    public int getPointCount(int entry) {
+        return columns.getPointCount(entry);
+    }
+
+    public double getX(int entry, int point) {
+        return columns.getX(entry, point);
+    }
+
+    public double getY(int entry, int point) {
+        return columns.getY(entry, point);
+    }
+
+    /**
+     * Copies an entry out of the columns; {@link #find(String, int)} and the getters read it
+     * in place.
+     *
+     * @return the entry of object {@code id} at {@code time}, without z, or null if there is none.
+     */
+    public StampedCloudPoints getStampedCloudPoints(String id, int time) {
+        int entry = find(id, time);
+        if (entry < 0) {
+            return null;
+        }
+        List<List<Double>> points = new ArrayList<>(getPointCount(entry));
+        for (int p = 0; p < getPointCount(entry); ++p) {
+            List<Double> coordinate = new ArrayList<>(2);
+            coordinate.add(getX(entry, p));
+            coordinate.add(getY(entry, p));
+            points.add(coordinate);
+        }
+        return new StampedCloudPoints(getId(entry), getTime(entry), points);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,319 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A binary form of lidar_data.json that {@link LiDarDataBase} maps into memory instead of
+ * parsing, so that opening it takes the same time whatever its size, and data larger than
+ * the heap can be used.
+ * <p>
+ * The file holds the columns of {@link LiDarColumns}, ready to use, in big-endian order:
+ * <ul>
+ *     <li>a header: a magic number, the version, the numbers of entries, of distinct object
+ *     ids and of hash table slots, the number of points, and where the columns start;</li>
+ *     <li>the distinct object ids, each as a length and UTF-8 bytes;</li>
+ *     <li>from an offset aligned to 8 bytes, the columns: the id number of every entry, its
+ *     time, the position of its first point followed by the number of points, the hash table
+ *     slots, then the x and the y of all the points.</li>
+ * </ul>
+ * Only the ids are read when the file is opened; the columns are read as they are used.
+ * A file holds fewer than 2^27 entries, so that every column but the points fits one mapping.
+ */
+public final class LiDarDataFile {
+    private static final int MAGIC = 0x4C445231; // "LDR1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    private static final int MAX_ENTRIES = (1 << 27) - 1;
+    // The point columns are mapped in segments of 2^27 points, 1 GiB each
+    private static final int SEGMENT_SHIFT = 27;
+
+    private LiDarDataFile() {
+    }
+
+    /**
+     * @return whether {@code file} exists and is in this format rather than JSON.
+     */
+    public static boolean isBinary(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] magic = new byte[4];
+            return in.read(magic) == 4 && ByteBuffer.wrap(magic).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Converts a lidar_data.json file to this format. The JSON is streamed, so it may be larger
+     * than the heap; the points go through two temporary files next to {@code out}, and only
+     * the ids and times of the entries are held in memory.
+     *
+     * @return the number of entries written.
+     * @throws IOException if a file cannot be read or written, or the JSON is not a list of entries.
+     */
+    public static int convert(Path json, Path out) throws IOException {
+        Path directory = out.toAbsolutePath().getParent();
+        Path xFile = Files.createTempFile(directory, out.getFileName().toString(), ".x");
+        Path yFile = Files.createTempFile(directory, out.getFileName().toString(), ".y");
+        try {
+            Entries entries = new Entries();
+            try (Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8);
+                 DataOutputStream xs = output(xFile);
+                 DataOutputStream ys = output(yFile)) {
+                readEntries(new JsonReader(reader), entries, xs, ys);
+            }
+            write(entries, xFile, yFile, out);
+            return entries.count;
+        }
+        finally {
+            Files.deleteIfExists(xFile);
+            Files.deleteIfExists(yFile);
+        }
+    }
+
+    static LiDarColumns open(Path file) throws IOException {
+        return open(file, SEGMENT_SHIFT);
+    }
+
+    /**
+     * @param segmentShift the log2 of the number of points per mapping of the point columns.
+     * @throws IOException if {@code file} is not in this format or is cut short.
+     */
+    static LiDarColumns open(Path file, int segmentShift) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is not a LiDAR data file");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a LiDAR data file of version " + VERSION);
+            }
+            int entries = header.getInt();
+            int nameCount = header.getInt();
+            int slotCount = header.getInt();
+            header.getInt();
+            long points = header.getLong();
+            long offset = header.getLong();
+            long end = offset + 16L * entries + 8 + 4L * slotCount + 16 * points;
+            if (channel.size() < end) {
+                throw new IOException(file + " is cut short");
+            }
+
+            ByteBuffer namesSection = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, offset - HEADER_SIZE);
+            String[] names = new String[nameCount];
+            for (int i = 0; i < nameCount; ++i) {
+                byte[] bytes = new byte[namesSection.getInt()];
+                namesSection.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            IntBuffer nameNumbers = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * entries).asIntBuffer();
+            offset += 4L * entries;
+            IntBuffer times = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * entries).asIntBuffer();
+            offset += 4L * entries;
+            LongBuffer firstPoints = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * (entries + 1)).asLongBuffer();
+            offset += 8L * (entries + 1);
+            IntBuffer slots = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * slotCount).asIntBuffer();
+            offset += 4L * slotCount;
+            DoubleBuffer[] xs = segments(channel, offset, points, segmentShift);
+            DoubleBuffer[] ys = segments(channel, offset + 8 * points, points, segmentShift);
+            // The mappings stay valid once the channel is closed
+            return new Mapped(names, nameNumbers, times, firstPoints, slots, xs, ys, segmentShift);
+        }
+    }
+
+    private static DoubleBuffer[] segments(FileChannel channel, long offset, long points, int segmentShift)
+            throws IOException {
+        long segmentSize = 1L << segmentShift;
+        DoubleBuffer[] segments = new DoubleBuffer[(int) ((points + segmentSize - 1) >>> segmentShift)];
+        for (int i = 0; i < segments.length; ++i) {
+            long first = (long) i << segmentShift;
+            long size = Math.min(segmentSize, points - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + 8 * first, 8 * size).asDoubleBuffer();
+        }
+        return segments;
+    }
+
+    private static DataOutputStream output(Path file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    // Reads [{"id": ..., "time": ..., "cloudPoints": [[x, y, z], ...]}, ...]
+    private static void readEntries(JsonReader reader, Entries entries, DataOutputStream xs, DataOutputStream ys)
+            throws IOException {
+        LiDarJsonEntry entry = new LiDarJsonEntry();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            entry.read(reader, (x, y) -> {
+                xs.writeDouble(x);
+                ys.writeDouble(y);
+            });
+            if (entries.count == MAX_ENTRIES) {
+                throw new IOException("More than " + MAX_ENTRIES + " LiDAR entries");
+            }
+            entries.add(entry.getId(), entry.getTime(), entry.getPointCount());
+        }
+        reader.endArray();
+    }
+
+    private static void write(Entries entries, Path xFile, Path yFile, Path out) throws IOException {
+        int count = entries.count;
+        List<byte[]> names = new ArrayList<>();
+        long namesSize = 0;
+        for (String name : entries.names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            names.add(bytes);
+            namesSize += 4 + bytes.length;
+        }
+        long offset = (HEADER_SIZE + namesSize + 7) & ~7L;
+        int[] slots = LiDarColumns.index(count, e -> entries.names.get(entries.nameNumbers[e]), e -> entries.times[e]);
+
+        try (DataOutputStream file = output(out)) {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeInt(count);
+            file.writeInt(names.size());
+            file.writeInt(slots.length);
+            file.writeInt(0);
+            file.writeLong(entries.points);
+            file.writeLong(offset);
+            for (byte[] name : names) {
+                file.writeInt(name.length);
+                file.write(name);
+            }
+            for (long pad = HEADER_SIZE + namesSize; pad < offset; ++pad) {
+                file.writeByte(0);
+            }
+            for (int e = 0; e < count; ++e) {
+                file.writeInt(entries.nameNumbers[e]);
+            }
+            for (int e = 0; e < count; ++e) {
+                file.writeInt(entries.times[e]);
+            }
+            for (int e = 0; e < count; ++e) {
+                file.writeLong(entries.firstPoints[e]);
+            }
+            file.writeLong(entries.points);
+            for (int slot : slots) {
+                file.writeInt(slot);
+            }
+            Files.copy(xFile, file);
+            Files.copy(yFile, file);
+        }
+    }
+
+    // The entries read so far, with their ids numbered in order of appearance
+    private static final class Entries {
+        private final Map<String, Integer> numbers = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+        private int[] nameNumbers = new int[1024];
+        private int[] times = new int[1024];
+        private long[] firstPoints = new long[1024];
+        private int count;
+        private long points;
+
+        void add(String id, int time, int pointCount) {
+            if (count == times.length) {
+                nameNumbers = Arrays.copyOf(nameNumbers, count * 2);
+                times = Arrays.copyOf(times, count * 2);
+                firstPoints = Arrays.copyOf(firstPoints, count * 2);
+            }
+            Integer number = numbers.get(id);
+            if (number == null) {
+                number = names.size();
+                numbers.put(id, number);
+                names.add(id);
+            }
+            nameNumbers[count] = number;
+            times[count] = time;
+            firstPoints[count] = points;
+            points += pointCount;
+            ++count;
+        }
+    }
+
+    private static final class Mapped extends LiDarColumns.Indexed {
+        private final String[] names;
+        private final IntBuffer nameNumbers;
+        private final IntBuffer times;
+        private final LongBuffer firstPoints;
+        private final IntBuffer slots;
+        private final DoubleBuffer[] xs;
+        private final DoubleBuffer[] ys;
+        private final int segmentShift;
+        private final long segmentMask;
+
+        private Mapped(String[] names, IntBuffer nameNumbers, IntBuffer times, LongBuffer firstPoints, IntBuffer slots,
+                       DoubleBuffer[] xs, DoubleBuffer[] ys, int segmentShift) {
+            this.names = names;
+            this.nameNumbers = nameNumbers;
+            this.times = times;
+            this.firstPoints = firstPoints;
+            this.slots = slots;
+            this.xs = xs;
+            this.ys = ys;
+            this.segmentShift = segmentShift;
+            segmentMask = (1L << segmentShift) - 1;
+        }
+
+        @Override
+        int size() {
+            return times.capacity();
+        }
+
+        @Override
+        String getId(int entry) {
+            return names[nameNumbers.get(entry)];
+        }
+
+        @Override
+        int getTime(int entry) {
+            return times.get(entry);
+        }
+
+        @Override
+        long getFirstPoint(int entry) {
+            return firstPoints.get(entry);
+        }
+
+        @Override
+        double getX(long point) {
+            return xs[(int) (point >>> segmentShift)].get((int) (point & segmentMask));
+        }
+
+        @Override
+        double getY(long point) {
+            return ys[(int) (point >>> segmentShift)].get((int) (point & segmentMask));
+        }
+
+        @Override
+        int getSlotCount() {
+            return slots.capacity();
+        }
+
+        @Override
+        int getSlot(int slot) {
+            return slots.get(slot);
+        }
+    }
+}
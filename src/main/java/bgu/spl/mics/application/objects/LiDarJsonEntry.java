@@ -0,0 +1,111 @@
+package bgu.spl.mics.application.objects;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * One entry of lidar_data.json, {"id": ..., "time": ..., "cloudPoints": [[x, y, z], ...]}, read
+ * from a {@link JsonReader} without building the lists Gson would. The points are handed on
+ * as they are read, and their z is skipped.
+ */
+final class LiDarJsonEntry {
+
+    /**
+     * Receives the points of an entry.
+     */
+    interface PointSink {
+        void add(double x, double y) throws IOException;
+    }
+
+    /**
+     * Collects points into x and y arrays that grow as needed.
+     */
+    static final class Points implements PointSink {
+        private double[] xs = new double[16];
+        private double[] ys = new double[16];
+        private int size;
+
+        @Override
+        public void add(double x, double y) {
+            if (size == xs.length) {
+                xs = Arrays.copyOf(xs, size * 2);
+                ys = Arrays.copyOf(ys, size * 2);
+            }
+            xs[size] = x;
+            ys[size] = y;
+            ++size;
+        }
+
+        int size() {
+            return size;
+        }
+
+        double[] copyXs() {
+            return Arrays.copyOf(xs, size);
+        }
+
+        double[] copyYs() {
+            return Arrays.copyOf(ys, size);
+        }
+    }
+
+    private String id;
+    private int time;
+    private int points;
+
+    /**
+     * Reads the next entry of the list {@code reader} is in.
+     *
+     * @throws IOException if it is not an entry or has no id.
+     */
+    void read(JsonReader reader, PointSink sink) throws IOException {
+        id = null;
+        time = 0;
+        points = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("id") && reader.peek() != JsonToken.NULL) {
+                id = reader.nextString();
+            }
+            else if (field.equals("time")) {
+                time = reader.nextInt();
+            }
+            else if (field.equals("cloudPoints") && reader.peek() != JsonToken.NULL) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    reader.beginArray();
+                    sink.add(reader.nextDouble(), reader.nextDouble());
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    ++points;
+                }
+                reader.endArray();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (id == null) {
+            throw new IOException("LiDAR entry at " + reader.getPath() + " has no id");
+        }
+    }
+
+    String getId() {
+        return id;
+    }
+
+    int getTime() {
+        return time;
+    }
+
+    int getPointCount() {
+        return points;
+    }
+}
@@ -0,0 +1,172 @@
+package bgu.spl.mics.application.objects;
+
+import bgu.spl.mics.PrefetchingListReader;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * LiDAR entries read from lidar_data.json as the simulation goes, for data too large to parse
+ * up front. A {@link PrefetchingListReader} reads ahead of the current tick on a thread of its
+ * own; the entries up to the tick are kept and indexed until they are more than
+ * {@code retention} ticks old, after which they cannot be found any more.
+ * <p>
+ * The entries must be in time order. They are numbered in file order like in the other
+ * storages, and the number of an entry stays valid while it is kept.
+ */
+final class LiDarStream extends LiDarColumns {
+    private final PrefetchingListReader<Entry> reader;
+    private final int retention;
+    // The entries kept, from position first on, the first of them being entry number base
+    private Entry[] window;
+    private int first;
+    private int count;
+    private int base;
+    // Hash table of the entries kept, by their position after first, plus one
+    private int[] slots;
+    private int tick;
+    private boolean complete;
+
+    /**
+     * Starts reading {@code json}.
+     *
+     * @param ticksAhead how many ticks beyond the current one to read ahead.
+     * @param retention  how many ticks behind the current one to keep entries for.
+     */
+    LiDarStream(Path json, int ticksAhead, int retention) {
+        this.retention = retention;
+        window = new Entry[64];
+        slots = new int[1];
+        tick = -1;
+        reader = new PrefetchingListReader<>("LiDarStream",
+                () -> new JsonReader(Files.newBufferedReader(json, StandardCharsets.UTF_8)),
+                LiDarStream::readEntry, entry -> entry.time, ticksAhead);
+    }
+
+    @Override
+    synchronized void advanceTo(int tick) {
+        if (tick <= this.tick) {
+            return;
+        }
+        this.tick = tick;
+        try {
+            Entry next;
+            while ((next = reader.poll(tick)) != null) {
+                add(next);
+            }
+            while (count > 0 && window[first].time < tick - retention) {
+                window[first++] = null;
+                ++base;
+                --count;
+            }
+            slots = index(count, e -> window[first + e].id, e -> window[first + e].time);
+            complete = reader.isExhausted();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot read the LiDAR data", e);
+        }
+    }
+
+    @Override
+    void close() {
+        reader.close();
+    }
+
+    @Override
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    synchronized int size() {
+        return base + count;
+    }
+
+    @Override
+    synchronized String getId(int entry) {
+        return get(entry).id;
+    }
+
+    @Override
+    synchronized int getTime(int entry) {
+        return get(entry).time;
+    }
+
+    @Override
+    synchronized int getPointCount(int entry) {
+        return get(entry).xs.length;
+    }
+
+    @Override
+    synchronized double getX(int entry, int point) {
+        return get(entry).xs[point];
+    }
+
+    @Override
+    synchronized double getY(int entry, int point) {
+        return get(entry).ys[point];
+    }
+
+    @Override
+    synchronized int find(String id, int time) {
+        int mask = slots.length - 1;
+        for (int slot = hash(id, time) & mask; ; slot = (slot + 1) & mask) {
+            int position = slots[slot] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            Entry entry = window[first + position];
+            if (entry.time == time && Objects.equals(entry.id, id)) {
+                return base + position;
+            }
+        }
+    }
+
+    private Entry get(int entry) {
+        if (entry < base || entry >= base + count) {
+            throw new IllegalStateException("LiDAR entry " + entry + " is not kept; entries "
+                                            + base + " to " + (base + count - 1) + " are");
+        }
+        return window[first + entry - base];
+    }
+
+    private void add(Entry entry) {
+        if (first + count == window.length) {
+            if (count > window.length / 2) {
+                window = Arrays.copyOf(window, window.length * 2);
+            }
+            else {
+                System.arraycopy(window, first, window, 0, count);
+                Arrays.fill(window, count, first + count, null);
+                first = 0;
+            }
+        }
+        window[first + count++] = entry;
+    }
+
+    private static Entry readEntry(JsonReader reader) throws IOException {
+        LiDarJsonEntry json = new LiDarJsonEntry();
+        LiDarJsonEntry.Points points = new LiDarJsonEntry.Points();
+        json.read(reader, points);
+        return new Entry(json.getId(), json.getTime(), points.copyXs(), points.copyYs());
+    }
+
+    private static final class Entry {
+        private final String id;
+        private final int time;
+        private final double[] xs;
+        private final double[] ys;
+
+        private Entry(String id, int time, double[] xs, double[] ys) {
+            this.id = id;
+            this.time = time;
+            this.xs = xs;
+            this.ys = ys;
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package bgu.spl.mics.application.objects;
 
+import bgu.spl.mics.LatencyHistogram;
+import bgu.spl.mics.SimulationContext;
+
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -13,10 +16,7 @@ public class StatisticalFolder {
     private AtomicInteger numDetectedObjects;
     private AtomicInteger numTrackedObjects;
     private AtomicInteger numLandmarks;
-
-    private static class SingletonHolder {
-        private static final StatisticalFolder instance = new StatisticalFolder();
-    }
+    private LatencyHistogram tickJitter;
 
     private StatisticalFolder() {
         // Private constructor prevents instantiation from outside.
@@ -24,9 +24,10 @@ public class StatisticalFolder {
         numDetectedObjects = new AtomicInteger();
         numTrackedObjects = new AtomicInteger();
         numLandmarks = new AtomicInteger();
+        tickJitter = new LatencyHistogram();
     }
     public static StatisticalFolder getInstance() {
-        return SingletonHolder.instance;
+        return SimulationContext.current().get(StatisticalFolder.class, StatisticalFolder::new);
     }
 
     // ================ GETTERS ================
@@ -57,6 +58,13 @@ public class StatisticalFolder {
         return numLandmarks.get();
     }
 
+    /**
+     * @return how late the clock sent each tick after its due time.
+     */
+    public LatencyHistogram getTickJitter() {
+        return tickJitter;
+    }
+
 
 
     // ================ COUNTER UPDATES ================
@@ -65,6 +73,10 @@ public class StatisticalFolder {
         systemRuntime.incrementAndGet();;
     }
 
+    public void addRunTime(int ticks) {
+        systemRuntime.addAndGet(ticks);
+    }
+
 
     public void addDetectedObjects(int count) {
         numDetectedObjects.addAndGet(count);
@@ -74,9 +86,21 @@ public class StatisticalFolder {
         numTrackedObjects.addAndGet(count);
     }
 
+    /**
+     * Raises the tracked count to {@code total}, a count that includes objects tracked in
+     * other processes; a lower total is ignored.
+     */
+    public void raiseTrackedObjects(int total) {
+        numTrackedObjects.accumulateAndGet(total, Math::max);
+    }
+
     public void incrementLandmarks() {
         numLandmarks.incrementAndGet();;
     }
 
+    public void recordTickJitter(long nanos) {
+        tickJitter.record(nanos);
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The ticks of a simulation at which some service may have work, worked out from its input
+ * before it starts. The TimeService of a discrete-event run jumps straight from one of them to
+ * the next, as one collapsed tick, instead of sleeping through the idle ticks in between.
+ * <p>
+ * A detection at time t of a camera with frequency f is sent at tick t+f, and a LiDAR worker
+ * with frequency g tracks it at tick t+g, but not before the tick after it was sent. Every pose
+ * is sent at its own time. Each of those ticks is followed by the two after it, which is when
+ * the fusion service handles what was sent and when services notice they are done.
+ */
+public class TickSchedule {
+    // Ticks after a scheduled one that are kept for the work it leads to
+    private static final int FOLLOW_UP_TICKS = 2;
+
+    private final int[] ticks;
+
+    public TickSchedule(List<Camera> cameras, List<LiDarWorkerTracker> lidarWorkers, List<Pose> poses, int duration) {
+        TreeSet<Integer> work = new TreeSet<>();
+        add(work, 1, duration);
+        work.add(duration);
+        for (Camera camera : cameras) {
+            for (StampedDetectedObjects detection : camera.getDetections()) {
+                int sent = detection.getTime() + camera.getFrequency();
+                add(work, sent, duration);
+                for (LiDarWorkerTracker worker : lidarWorkers) {
+                    add(work, Math.max(sent + 1, detection.getTime() + worker.getFrequency()), duration);
+                }
+            }
+        }
+        for (Pose pose : poses) {
+            add(work, pose.getTime(), duration);
+        }
+        ticks = work.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static void add(TreeSet<Integer> work, int tick, int duration) {
+        for (int t = Math.max(tick, 1); t <= tick + FOLLOW_UP_TICKS && t <= duration; ++t) {
+            work.add(t);
+        }
+    }
+
+    /**
+     * @return the first scheduled tick after {@code tick}, or {@code tick + 1} if there is none.
+     */
+    public int nextTick(int tick) {
+        int index = Arrays.binarySearch(ticks, tick + 1);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < ticks.length ? ticks[index] : tick + 1;
+    }
+
+    /**
+     * @return the number of scheduled ticks.
+     */
+    public int size() {
+        return ticks.length;
+    }
+}
@@ -1,5 +1,6 @@
 package bgu.spl.mics.application.services;
 
+import bgu.spl.mics.Future;
 import bgu.spl.mics.LastFrames;
 import bgu.spl.mics.MicroService;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
@@ -11,8 +12,8 @@ import bgu.spl.mics.application.objects.StampedDetectedObjects;
 import bgu.spl.mics.application.objects.StatisticalFolder;
 import bgu.spl.mics.application.objects.DetectedObject;
 import bgu.spl.mics.application.objects.STATUS;
-import java.util.List;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * CameraService is responsible for processing data from the camera and
@@ -25,7 +26,8 @@ public class CameraService extends MicroService {
 
     // private int mbt;
     private final Camera camera;
-    private int curr;
+    // Detections sent and not tracked yet, plus one until the last one is sent
+    private final AtomicInteger outstanding;
 
     /**
      * Constructor for CameraService.
@@ -35,7 +37,7 @@ public class CameraService extends MicroService {
     public CameraService(Camera camera) {
         super("Camera" + String.valueOf(camera.getId()));
         this.camera = camera;
-        this.curr = 0;
+        this.outstanding = new AtomicInteger(1);
     }
 
     /**
@@ -48,21 +50,20 @@ public class CameraService extends MicroService {
         System.out.println(getName() + " started");
         
         subscribeBroadcast(TickBroadcast.class, tick -> {
-            List<StampedDetectedObjects> detections = camera.getDetections();
-            if (curr >= detections.size()) {
+            if (!camera.hasMoreDetections()) {
                 sendBroadcast(new TerminatedBroadcast(this.getClass()));
-                camera.setStatus(STATUS.DOWN);
+                // The camera is down once the LiDAR workers have tracked everything it sent
+                detectionDone();
                 Thread.currentThread().interrupt();
                 return;
             }
 
             int currentTick = tick.getCurrentTick();           
-            StampedDetectedObjects next = detections.get(curr);
-            int detectionTime = next.getTime();  // from the JSON
-            int sendTime = detectionTime + camera.getFrequency();
 
-            // If the current simulation tick matches detectionTime+frequency, we send it
-            if (currentTick >= sendTime) {
+            // If the current simulation tick matches detectionTime+frequency, we send it.
+            // A collapsed tick may cover several detections, so keep going until we catch up.
+            StampedDetectedObjects next;
+            while ((next = camera.nextDetection(currentTick)) != null) {
                 Iterator<DetectedObject> it = next.getDetectedObjects().iterator();
 
                 while (it.hasNext()) {
@@ -76,18 +77,21 @@ public class CameraService extends MicroService {
                 }
 
                 LastFrames.getInstance().setLastCameraFrame(getName(), next.getDetectedObjects(), next.getTime());
-                sendEvent(new DetectObjectsEvent(camera.getId(), next));
+                Future<Boolean> tracked = sendEvent(new DetectObjectsEvent(camera.getId(), next));
+                if (tracked != null) {
+                    outstanding.incrementAndGet();
+                    tracked.onComplete(result -> detectionDone());
+                }
                 // ------------------ Update statistical folder ----------------
                 int count = next.getDetectedObjects().size();
                 StatisticalFolder.getInstance().addDetectedObjects(count);
-
-                ++curr;
             }   
         });
 
 
         subscribeBroadcast(TerminatedBroadcast.class, terminated -> {
             if (terminated.getSenderClass() == TimeService.class) {
+                shutDown();
                 Thread.currentThread().interrupt();
             }
         });
@@ -97,8 +101,22 @@ public class CameraService extends MicroService {
             // it interrupts all other sensors, causing the system to stop.
             // Affected MicroServices terminate and write an output file detailing the system's state
             // before the error and indicating which sensor(s) caused the error.
+            shutDown();
             Thread.currentThread().interrupt();
         });
         
     }
+
+    private void detectionDone() {
+        if (outstanding.decrementAndGet() == 0) {
+            camera.setStatus(STATUS.DOWN);
+        }
+    }
+
+    // Stopped from outside: the camera is down unless it failed itself
+    private void shutDown() {
+        if (camera.getStatus() != STATUS.ERROR) {
+            camera.setStatus(STATUS.DOWN);
+        }
+    }
 }
\ No newline at end of file
@@ -17,6 +17,7 @@ import bgu.spl.mics.application.objects.Pose;
 import bgu.spl.mics.application.objects.StatisticalFolder;
 import bgu.spl.mics.LastFrames;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.RingBufferMailbox;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
 import bgu.spl.mics.application.messages.PoseEvent;
 import bgu.spl.mics.application.messages.TerminatedBroadcast;
@@ -35,6 +36,9 @@ import bgu.spl.mics.application.objects.TrackedObject;
  * transforming and updating the map with new landmarks.
  */
 public class FusionSlamService extends MicroService {
+    // Every LiDAR worker and the PoseService feed this service, so it gets an allocation-free mailbox
+    private static final int MAILBOX_CAPACITY = 1024;
+
     private final FusionSlam fusionSlam;
     private final LinkedList<TrackedObjectsEvent> trackedEventQueue;
     private final String directoryPath;
@@ -46,7 +50,7 @@ public class FusionSlamService extends MicroService {
      * @param fusionSlam The FusionSLAM object responsible for managing the global map.
      */
     public FusionSlamService(FusionSlam fusionSlam, String directoryPath) {
-        super("FusionSlam");
+        super("FusionSlam", () -> new RingBufferMailbox(MAILBOX_CAPACITY));
         this.fusionSlam = fusionSlam;
         this.trackedEventQueue = new LinkedList<>();
         this.directoryPath = directoryPath;
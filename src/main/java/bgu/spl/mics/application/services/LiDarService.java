@@ -2,6 +2,7 @@ package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.LastFrames;
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.RingBufferMailbox;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
 import bgu.spl.mics.application.messages.DetectObjectsEvent;
 import bgu.spl.mics.application.messages.TerminatedBroadcast;
@@ -13,8 +14,8 @@ import bgu.spl.mics.application.objects.LiDarWorkerTracker;
 import bgu.spl.mics.application.objects.STATUS;
 import bgu.spl.mics.application.objects.StampedDetectedObjects;
 import bgu.spl.mics.application.objects.StatisticalFolder;
-import bgu.spl.mics.application.objects.StampedCloudPoints;
 import bgu.spl.mics.application.objects.TrackedObject;
+import bgu.spl.mics.application.messages.TrackedObjectsBroadcast;
 import bgu.spl.mics.application.messages.TrackedObjectsEvent;
 import java.util.List;
 import java.util.LinkedList;
@@ -29,6 +30,9 @@ import java.util.LinkedList;
  */
 public class LiDarService extends MicroService {
 
+    // Detection bursts from all cameras land here, so the worker gets an allocation-free mailbox
+    private static final int MAILBOX_CAPACITY = 1024;
+
     private final LiDarWorkerTracker LiDarWorkerTracker;
     private final LinkedList<DetectObjectsEvent> detectEventQueue;
 
@@ -38,7 +42,7 @@ public class LiDarService extends MicroService {
      * @param LiDarWorkerTracker A LiDAR Tracker worker object that this service will use to process data.
      */
     public LiDarService(LiDarWorkerTracker LiDarWorkerTracker) {
-        super("LiDarWorkerTracker" + String.valueOf(LiDarWorkerTracker.getId()));
+        super("LiDarWorkerTracker" + String.valueOf(LiDarWorkerTracker.getId()), () -> new RingBufferMailbox(MAILBOX_CAPACITY));
         this.LiDarWorkerTracker = LiDarWorkerTracker;
         this.detectEventQueue = new LinkedList<>();
         // TODO Implement this
@@ -63,10 +67,24 @@ public class LiDarService extends MicroService {
             Thread.currentThread().interrupt();
         });
 
+        // What the workers in other processes tracked, so that all of them stop on the same total
+        subscribeBroadcast(TrackedObjectsBroadcast.class, tracked -> {
+            StatisticalFolder.getInstance().raiseTrackedObjects(tracked.getTotal());
+        });
+
 
 
         subscribeBroadcast(TickBroadcast.class, tick -> {
-            if (StatisticalFolder.getInstance().getNumTrackedObjects() >= LiDarDataBase.getInstance("").getCloudPoints().size()) {
+            // Streamed data is read up to the tick first, and its size is known once all of it was
+            LiDarDataBase data = LiDarDataBase.getInstance("");
+            try {
+                data.advanceTo(tick.getCurrentTick());
+            }
+            catch (IllegalStateException e) {
+                crash(e.getMessage());
+                return;
+            }
+            if (data.isComplete() && StatisticalFolder.getInstance().getNumTrackedObjects() >= data.size()) {
                 sendBroadcast(new TerminatedBroadcast(this.getClass()));
                 LiDarWorkerTracker.setStatus(STATUS.DOWN);
                 Thread.currentThread().interrupt();
@@ -78,21 +96,23 @@ public class LiDarService extends MicroService {
                 StampedDetectedObjects stampedObjects = doe.getStampedObjects();
                 int detectTime = stampedObjects.getTime();
                 List<TrackedObject> toSend = new LinkedList<>();
+                LiDarDataBase db = LiDarDataBase.getInstance("");
 
                 for (DetectedObject obj : stampedObjects.getDetectedObjects()) {
-                    StampedCloudPoints objPoints = LiDarDataBase.getInstance("").getStampedCloudPoints(obj.getId(), detectTime);
-                    if (objPoints.getId().equals("ERROR")) {
-                            sendBroadcast(new CrashedBroadcast(getName(), this.getName() + " disconnected"));
-                            LiDarWorkerTracker.setStatus(STATUS.ERROR);
-                            Thread.currentThread().interrupt();
-                            return;
+                    int entry = db.find(obj.getId(), detectTime);
+                    if (entry < 0) {
+                        crash("No LiDAR data for " + obj.getId() + " at " + detectTime);
+                        return;
+                    }
+                    if (db.getId(entry).equals("ERROR")) {
+                        crash(this.getName() + " disconnected");
+                        return;
                     }
 
-                    List<List<Double>> coordinates = objPoints.getCloudPoints(); //filePath
                     List<CloudPoint> cloudPoints = new LinkedList<>();
 
-                    for (List<Double> coordinate : coordinates) {
-                        cloudPoints.add(new CloudPoint(coordinate.get(0), coordinate.get(1)));
+                    for (int p = 0; p < db.getPointCount(entry); ++p) {
+                        cloudPoints.add(new CloudPoint(db.getX(entry, p), db.getY(entry, p)));
                     }
 
                     toSend.add(new TrackedObject(obj.getId(), detectTime, obj.getDescription(), cloudPoints));
@@ -103,6 +123,7 @@ public class LiDarService extends MicroService {
                 sendEvent(new TrackedObjectsEvent(toSend));
                 // ------------------ Update statistical folder ----------------
                 StatisticalFolder.getInstance().addTrackedObjects(toSend.size());
+                sendBroadcast(new TrackedObjectsBroadcast(StatisticalFolder.getInstance().getNumTrackedObjects()));
                 complete(doe, true);
             }
         });
@@ -111,4 +132,11 @@ public class LiDarService extends MicroService {
             detectEventQueue.add(doe);
         });
     }
+
+    // Stops the simulation like a sensor error does, for data this worker cannot get
+    private void crash(String description) {
+        sendBroadcast(new CrashedBroadcast(getName(), description));
+        LiDarWorkerTracker.setStatus(STATUS.ERROR);
+        Thread.currentThread().interrupt();
+    }
 }
@@ -55,12 +55,10 @@ public class PoseService extends MicroService {
             }
 
 
-            // If we do have a Pose, check if the time is <= currentTick
-            Pose next = poseList.get(curr);
-            int poseTime = next.getTime();
-            if (currentTick >= poseTime) {
+            // Send every Pose whose time is <= currentTick; a collapsed tick may cover several
+            while (curr < poseList.size() && currentTick >= poseList.get(curr).getTime()) {
                 // Send a PoseEvent to whomever is subscribing (e.g. FusionSLAM)
-                sendEvent(new PoseEvent(next));
+                sendEvent(new PoseEvent(poseList.get(curr)));
                 ++curr;
             }
             // else: The time hasn't come yet, do nothing
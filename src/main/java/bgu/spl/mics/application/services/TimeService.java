@@ -1,30 +1,83 @@
 package bgu.spl.mics.application.services;
 
 import bgu.spl.mics.MicroService;
+import bgu.spl.mics.Topic;
 import bgu.spl.mics.application.messages.CrashedBroadcast;
 import bgu.spl.mics.application.messages.TerminatedBroadcast;
 import bgu.spl.mics.application.messages.TickBroadcast;
 import bgu.spl.mics.application.objects.StatisticalFolder;
+import bgu.spl.mics.application.objects.TickSchedule;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * TimeService acts as the global timer for the system, broadcasting TickBroadcast messages
  * at regular intervals and controlling the simulation's duration.
+ * <p>
+ * Ticks are due at fixed intervals from the first one, whatever time handling them takes, so
+ * lateness does not add up over a run; a tick that is late is sent at once. How late every
+ * tick was sent is recorded in the {@link StatisticalFolder}.
+ * <p>
+ * Given a {@link TickSchedule}, it runs as a discrete-event clock: from every tick it jumps to
+ * the next scheduled one, sending the idle ticks in between collapsed into it, and only the
+ * scheduled ticks take TickTime.
+ * <p>
+ * In lockstep it does not sleep at all: it sends the next tick as soon as every other service
+ * has handled everything the current one caused, however long or short that takes.
  */
 public class TimeService extends MicroService {
-    private final int speed;
+    // Sleeping is only precise to tens of microseconds, so the last stretch is spun instead
+    private static final long SPIN_NANOS = 100_000;
+
+    private final long periodNanos;
     private final int duration;
+    private final TickSchedule schedule;
+    private final boolean lockstep;
     private int clockTicks;
+    // When the next tick is due
+    private long deadline;
 
     /**
      * Constructor for TimeService.
      *
-     * @param TickTime  The duration of each tick in milliseconds.
+     * @param TickTime  The duration of each tick in seconds.
      * @param Duration  The total number of ticks before the service terminates.
      */
     public TimeService(int TickTime, int Duration) {
+        this(TickTime, Duration, null);
+    }
+
+    /**
+     * Constructor for a TimeService that skips the ticks {@code schedule} leaves out.
+     *
+     * @param schedule  The ticks to stop at, or null to stop at every tick.
+     */
+    public TimeService(int TickTime, int Duration, TickSchedule schedule) {
+        this(TickTime, Duration, schedule, false);
+    }
+
+    /**
+     * Constructor for a TimeService that may wait for the services instead of sleeping.
+     *
+     * @param lockstep  Whether to start every tick once the services are done with the last
+     *                  one, instead of after TickTime.
+     */
+    public TimeService(int TickTime, int Duration, TickSchedule schedule, boolean lockstep) {
+        this(TickTime, TimeUnit.SECONDS, Duration, schedule, lockstep);
+    }
+
+    /**
+     * Constructor for a TimeService with ticks shorter than a second.
+     *
+     * @param unit  The unit of TickTime.
+     */
+    public TimeService(int TickTime, TimeUnit unit, int Duration, TickSchedule schedule, boolean lockstep) {
         super("Time Service");
-        speed = TickTime*1000;
+        periodNanos = unit.toNanos(TickTime);
         duration = Duration;
+        this.schedule = schedule;
+        this.lockstep = lockstep;
         clockTicks = 1;
     }
 
@@ -53,31 +106,57 @@ public class TimeService extends MicroService {
         });
 
 
+        Topic<TickBroadcast> ticks = topic(TickBroadcast.class);
+
         // tick handling
         subscribeBroadcast(TickBroadcast.class, tick -> {
 
             try {
-                Thread.sleep(speed);
+                if (lockstep) {
+                    awaitQuiescence();
+                } else {
+                    deadline += periodNanos;
+                    awaitDeadline();
+                }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
             }
             if(tick.getCurrentTick()<duration)
             {
-                clockTicks = tick.getCurrentTick()+1;
-                sendBroadcast(new TickBroadcast(clockTicks));
+                int previous = tick.getCurrentTick();
+                clockTicks = schedule == null ? previous + 1 : Math.min(schedule.nextTick(previous), duration);
                 // ------------------ Update statistical folder ----------------
-                StatisticalFolder.getInstance().addRunTime();
+                // Counted first, so a service ending on this tick reports it
+                StatisticalFolder.getInstance().addRunTime(clockTicks - previous);
+                if (!lockstep) {
+                    StatisticalFolder.getInstance().recordTickJitter(System.nanoTime() - deadline);
+                }
+                ticks.publish(new TickBroadcast(previous + 1, clockTicks));
             }
             else
             {
-                sendBroadcast(new TerminatedBroadcast(this.getClass()));
+                sendBroadcast(new TerminatedBroadcast(this.getClass(), true));
                 Thread.currentThread().interrupt();
             }
 
         });
 
-    sendBroadcast(new TickBroadcast(clockTicks));
         // ------------------ Update statistical folder ----------------
         StatisticalFolder.getInstance().addRunTime();
+        deadline = System.nanoTime();
+        ticks.publish(new TickBroadcast(clockTicks));
+    }
+
+    private void awaitDeadline() throws InterruptedException {
+        for (long remaining = deadline - System.nanoTime(); remaining > 0; remaining = deadline - System.nanoTime()) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
     }
 }
\ No newline at end of file
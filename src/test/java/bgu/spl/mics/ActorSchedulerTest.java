@@ -0,0 +1,93 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for ActorScheduler: many services sharing a small pool must still handle their
+ * messages one at a time, in order, and terminate cleanly.
+ */
+class ActorSchedulerTest {
+
+    private static class NumberBroadcast implements Broadcast {
+        private final int number;
+
+        NumberBroadcast(int number) {
+            this.number = number;
+        }
+    }
+
+    private static class StopBroadcast implements Broadcast {
+    }
+
+    private static class CountingService extends MicroService {
+        private final CountDownLatch ready;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final List<Integer> received = new ArrayList<>();
+        private volatile boolean overlapped;
+
+        CountingService(String name, CountDownLatch ready) {
+            super(name);
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(NumberBroadcast.class, b -> {
+                if (!busy.compareAndSet(false, true)) {
+                    overlapped = true;
+                }
+                received.add(b.number);
+                Thread.yield();
+                busy.set(false);
+            });
+            subscribeBroadcast(StopBroadcast.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    /**
+     * Test #1: Services outnumbering the pool threads handle every broadcast sequentially and in order.
+     *
+     * Postcondition:
+     *  - Every service received all numbers in the order sent, never ran two callbacks at once,
+     *    and awaitTermination returned after the stop broadcast.
+     */
+    @Test
+    void testActors_sequentialAndInOrder() throws InterruptedException {
+        int services = 200;
+        int messages = 50;
+        ActorScheduler scheduler = new ActorScheduler(2);
+        CountDownLatch ready = new CountDownLatch(services);
+        List<CountingService> started = new ArrayList<>();
+        for (int i = 0; i < services; ++i) {
+            CountingService s = new CountingService("actor-" + i, ready);
+            started.add(s);
+            scheduler.start(s);
+        }
+        assertTrue(ready.await(10, TimeUnit.SECONDS), "all actors should initialize");
+
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        for (int n = 0; n < messages; ++n) {
+            bus.sendBroadcast(new NumberBroadcast(n));
+        }
+        bus.sendBroadcast(new StopBroadcast());
+        scheduler.awaitTermination();
+
+        for (CountingService s : started) {
+            assertFalse(s.overlapped, s.getName() + " ran two callbacks at once");
+            assertEquals(messages, s.received.size(), s.getName() + " should receive every broadcast");
+            for (int n = 0; n < messages; ++n) {
+                assertEquals(n, s.received.get(n), s.getName() + " received broadcasts out of order");
+            }
+            assertFalse(bus.getQueues().containsKey(s), s.getName() + " should have unregistered");
+        }
+    }
+}
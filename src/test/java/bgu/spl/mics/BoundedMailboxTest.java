@@ -0,0 +1,151 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.messages.TickBroadcast;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for BoundedMailbox: each overflow policy on a full mailbox of capacity 2.
+ */
+class BoundedMailboxTest {
+
+    private static class Tick implements Broadcast {
+    }
+
+    private static class Other implements Broadcast {
+    }
+
+    private static class Job implements Event<Boolean> {
+    }
+
+    /**
+     * Test #1: DROP_OLDEST discards the head of the queue to make room.
+     */
+    @Test
+    void testOffer_dropOldest() throws InterruptedException {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.DROP_OLDEST);
+        Message a = new Tick(), b = new Tick(), c = new Tick();
+        mailbox.offer(a);
+        mailbox.offer(b);
+        mailbox.offer(c);
+
+        assertEquals(2, mailbox.size());
+        assertEquals(1, mailbox.getOverflowCount());
+        assertSame(b, mailbox.take());
+        assertSame(c, mailbox.take());
+    }
+
+    /**
+     * Test #2: DROP_NEWEST keeps the queue as it was.
+     */
+    @Test
+    void testOffer_dropNewest() throws InterruptedException {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.DROP_NEWEST);
+        Message a = new Tick(), b = new Tick(), c = new Tick();
+        mailbox.offer(a);
+        mailbox.offer(b);
+        mailbox.offer(c);
+
+        assertEquals(1, mailbox.getOverflowCount());
+        assertSame(a, mailbox.take());
+        assertSame(b, mailbox.take());
+        assertEquals(0, mailbox.size());
+    }
+
+    /**
+     * Test #3: COALESCE puts the new broadcast in the place of the oldest queued one of
+     * the same type.
+     */
+    @Test
+    void testOffer_coalesce() throws InterruptedException {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.COALESCE);
+        Message tick1 = new Tick(), other = new Other(), tick2 = new Tick();
+        mailbox.offer(tick1);
+        mailbox.offer(other);
+        mailbox.offer(tick2);
+
+        assertEquals(1, mailbox.getOverflowCount());
+        assertSame(tick2, mailbox.take());
+        assertSame(other, mailbox.take());
+    }
+
+    /**
+     * Test #4: COALESCE merges coalescing broadcasts, so the queued tick keeps its place
+     * and stands for every tick it replaced.
+     */
+    @Test
+    void testOffer_coalesceKeepsTickRange() throws InterruptedException {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.COALESCE);
+        Message other = new Other();
+        mailbox.offer(new TickBroadcast(3));
+        mailbox.offer(other);
+        mailbox.offer(new TickBroadcast(4));
+        mailbox.offer(new TickBroadcast(5));
+
+        assertEquals(2, mailbox.getDropCount());
+        TickBroadcast tick = (TickBroadcast) mailbox.take();
+        assertEquals(3, tick.getFirstTick());
+        assertEquals(5, tick.getCurrentTick());
+        assertSame(other, mailbox.take());
+    }
+
+    /**
+     * Test #5: BLOCK makes the sender wait until the owner takes a message.
+     */
+    @Test
+    void testOffer_blockUntilTaken() throws InterruptedException {
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.BLOCK);
+        Message a = new Tick(), b = new Tick(), c = new Tick();
+        mailbox.offer(a);
+        mailbox.offer(b);
+
+        Thread sender = new Thread(() -> mailbox.offer(c));
+        sender.start();
+        while (mailbox.getOverflowCount() == 0) {
+            Thread.yield();
+        }
+        assertEquals(2, mailbox.size(), "the blocked message must not be queued yet");
+
+        assertSame(a, mailbox.take());
+        sender.join();
+        assertSame(b, mailbox.take());
+        assertSame(c, mailbox.take());
+    }
+
+    /**
+     * Test #6: the drop policies never drop an event; a new event waits for room, and
+     * DROP_OLDEST makes room for a new broadcast by discarding a broadcast, not an event.
+     */
+    @Test
+    void testOffer_dropPoliciesNeverDropEvents() throws InterruptedException {
+        for (OverflowPolicy policy : new OverflowPolicy[] {OverflowPolicy.DROP_NEWEST, OverflowPolicy.DROP_OLDEST}) {
+            BoundedMailbox mailbox = new BoundedMailbox(2, policy);
+            Message queued = new Job(), tick = new Tick(), job = new Job();
+            mailbox.offer(queued);
+            mailbox.offer(tick);
+
+            Thread sender = new Thread(() -> mailbox.offer(job));
+            sender.start();
+            while (mailbox.getOverflowCount() == 0) {
+                Thread.yield();
+            }
+            assertEquals(2, mailbox.size(), policy + ": the event must wait, not replace a message");
+            assertEquals(0, mailbox.getDropCount(), policy + ": no message may be dropped");
+
+            assertSame(queued, mailbox.take());
+            sender.join();
+            assertSame(tick, mailbox.take());
+            assertSame(job, mailbox.take());
+        }
+
+        BoundedMailbox mailbox = new BoundedMailbox(2, OverflowPolicy.DROP_OLDEST);
+        Message queued = new Job(), tick = new Tick(), newer = new Tick();
+        mailbox.offer(queued);
+        mailbox.offer(tick);
+        mailbox.offer(newer);
+        assertEquals(1, mailbox.getDropCount());
+        assertSame(queued, mailbox.take());
+        assertSame(newer, mailbox.take());
+    }
+}
@@ -0,0 +1,124 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for BusMetrics and LatencyHistogram.
+ */
+class BusMetricsTest {
+
+    private static class MeteredEvent implements Event<Boolean> {
+    }
+
+    private static class MeteredStop implements Broadcast {
+    }
+
+    private static class MeteredService extends MicroService {
+        private final CountDownLatch ready;
+
+        MeteredService(CountDownLatch ready) {
+            super("metered");
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(MeteredEvent.class, e -> complete(e, true));
+            subscribeBroadcast(MeteredStop.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    /**
+     * Test #1: Percentiles come from the bucket holding the rank, capped by the maximum.
+     */
+    @Test
+    void testHistogram_percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; ++i) {
+            histogram.record(1_000);
+        }
+        histogram.record(1_000_000);
+
+        assertEquals(100, histogram.getCount());
+        assertTrue(histogram.getP50Micros() >= 1.0 && histogram.getP50Micros() <= 1.25, "p50 within one bucket of 1us");
+        assertTrue(histogram.getP99Micros() <= 1.25, "p99 still in the 1us bucket");
+        assertEquals(1000.0, histogram.percentileMicros(1.0));
+        assertEquals(1000.0, histogram.getMaxMicros());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getP99Micros());
+    }
+
+    /**
+     * Test #2: Handled events are counted and, with every message sampled, each one's wait is timed.
+     *
+     * Postcondition:
+     *  - The handled count and the queue latency sample count grew by the number of events,
+     *    and the counts survive the service unregistering.
+     */
+    @Test
+    void testMetrics_countAndTimeEvents() throws InterruptedException {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        BusMetrics metrics = bus.getMetrics();
+        metrics.setSampleInterval(1);
+        try {
+            CountDownLatch ready = new CountDownLatch(1);
+            Thread t = new Thread(new MeteredService(ready));
+            t.start();
+            assertTrue(ready.await(5, TimeUnit.SECONDS));
+
+            int events = 100;
+            Future<?> last = null;
+            for (int i = 0; i < events; ++i) {
+                last = bus.sendEvent(new MeteredEvent());
+            }
+            assertNotNull(last);
+            last.get(5, TimeUnit.SECONDS);
+            bus.sendBroadcast(new MeteredStop());
+            t.join(5000);
+
+            Map<String, Long> handled = metrics.getHandledCounts();
+            assertEquals(events, handled.get("MeteredEvent"));
+            assertEquals(1, handled.get("MeteredStop"));
+            assertEquals(events, metrics.getQueueLatencies().get("MeteredEvent").getCount());
+            assertEquals(events, metrics.getCallbackLatencies().get("MeteredEvent").getCount());
+        }
+        finally {
+            metrics.setSampleInterval(64);
+        }
+        assertThrows(IllegalArgumentException.class, () -> metrics.setSampleInterval(3));
+    }
+
+    /**
+     * Test #3: The MXBean exposes the histograms as composite data.
+     */
+    @Test
+    void testMBean_registers() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(BusMetrics.OBJECT_NAME);
+        if (!server.isRegistered(name)) {
+            MessageBusImpl.getInstance().getMetrics().registerMBean();
+        }
+        assertEquals(64, server.getAttribute(name, "SampleInterval"));
+        assertNotNull(server.getAttribute(name, "MailboxDepths"));
+        TabularData latencies = (TabularData) server.getAttribute(name, "QueueLatencies");
+        for (Object row : latencies.values()) {
+            CompositeData histogram = (CompositeData) ((CompositeData) row).get("value");
+            assertTrue(histogram.containsKey("p99Micros"));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A standalone benchmark of the time it takes all services to stop after a crash notice
+ * while their queues hold a large backlog of data events.
+ * <p>
+ * It runs the same scenario twice: once with a stop broadcast delivered in order behind the
+ * backlog, once with a {@link ControlMessage} that takes the control lane.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes bgu.spl.mics.ControlLaneBenchmark [workers] [eventsPerWorker]
+ */
+public class ControlLaneBenchmark {
+
+    private static class DataEvent implements Event<Boolean> {
+    }
+
+    private static class InOrderStop implements Broadcast {
+    }
+
+    private static class ControlStop implements Broadcast, ControlMessage {
+    }
+
+    private static class Worker extends MicroService {
+        private final Class<? extends Broadcast> stopType;
+        private final CountDownLatch ready;
+        private final AtomicLong handledAfterStop;
+        private final AtomicBoolean stopSent;
+
+        Worker(String name, Class<? extends Broadcast> stopType, CountDownLatch ready,
+               AtomicLong handledAfterStop, AtomicBoolean stopSent) {
+            super(name);
+            this.stopType = stopType;
+            this.ready = ready;
+            this.handledAfterStop = handledAfterStop;
+            this.stopSent = stopSent;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(DataEvent.class, e -> {
+                // Simulates ~20 microseconds of LiDAR work per event
+                long until = System.nanoTime() + 20_000;
+                while (System.nanoTime() < until) {
+                    // busy wait
+                }
+                if (stopSent.get()) {
+                    handledAfterStop.incrementAndGet();
+                }
+            });
+            subscribeBroadcast(stopType, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int eventsPerWorker = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        System.out.println("workers=" + workers + ", backlog per worker=" + eventsPerWorker);
+        run("in-order stop    ", InOrderStop.class, new InOrderStop(), workers, eventsPerWorker);
+        run("control-lane stop", ControlStop.class, new ControlStop(), workers, eventsPerWorker);
+    }
+
+    private static void run(String label, Class<? extends Broadcast> stopType, Broadcast stop,
+                            int workers, int eventsPerWorker) throws InterruptedException {
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        CountDownLatch ready = new CountDownLatch(workers);
+        AtomicLong handledAfterStop = new AtomicLong();
+        AtomicBoolean stopSent = new AtomicBoolean();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < workers; ++i) {
+            Thread t = new Thread(new Worker("bench-" + i, stopType, ready, handledAfterStop, stopSent));
+            threads.add(t);
+            t.start();
+        }
+        ready.await();
+
+        for (int i = 0; i < workers * eventsPerWorker; ++i) {
+            bus.sendEvent(new DataEvent());
+        }
+
+        long start = System.nanoTime();
+        stopSent.set(true);
+        bus.sendBroadcast(stop);
+        for (Thread t : threads) {
+            t.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%s: quiesced in %8.2f ms, %d data events handled after the stop%n",
+                label, elapsed / 1e6, handledAfterStop.get());
+    }
+}
@@ -0,0 +1,80 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for ControlLaneMailbox: control messages overtake data and reach a waiting owner
+ * without passing through the data mailbox.
+ */
+class ControlLaneMailboxTest {
+
+    private static class Data implements Broadcast {
+    }
+
+    private static class Stop implements Broadcast, ControlMessage {
+    }
+
+    /**
+     * Test #1: A control message is accepted in front of a full bounded mailbox, whatever its policy.
+     *
+     * Precondition:
+     *  - The data mailbox has capacity 1 and holds one message.
+     *
+     * Postcondition:
+     *  - Offering the control message returns at once, drops nothing and counts both messages
+     *    as accepted; the control message is taken first and the data message is still there.
+     */
+    @Test
+    void testControl_bypassesFullBoundedMailbox() {
+        for (OverflowPolicy policy : OverflowPolicy.values()) {
+            BoundedMailbox data = new BoundedMailbox(1, policy);
+            ControlLaneMailbox lane = new ControlLaneMailbox(data);
+            Message queued = new Data(), stop = new Stop();
+            lane.offer(queued);
+
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> lane.offer(stop), policy.name());
+            assertEquals(0, data.getOverflowCount(), policy.name());
+            assertEquals(0, data.getDropCount(), policy.name());
+            assertEquals(2, lane.getAccepted(), policy.name());
+            assertEquals(2, lane.size(), policy.name());
+            assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+                assertSame(stop, lane.take(), policy.name());
+                assertSame(queued, lane.take(), policy.name());
+            });
+            assertEquals(0, lane.size(), policy.name());
+        }
+    }
+
+    /**
+     * Test #2: An owner waiting on empty lanes is woken by either kind of message.
+     *
+     * Postcondition:
+     *  - A control message and then a data message offered from another thread are both taken.
+     */
+    @Test
+    void testTake_wokenByEitherLane() throws InterruptedException {
+        ControlLaneMailbox lane = new ControlLaneMailbox(new BoundedMailbox(1, OverflowPolicy.BLOCK));
+        Message stop = new Stop(), data = new Data();
+        Thread sender = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                lane.offer(stop);
+                Thread.sleep(50);
+                lane.offer(data);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sender.start();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            assertSame(stop, lane.take());
+            assertSame(data, lane.take());
+        });
+        sender.join();
+    }
+}
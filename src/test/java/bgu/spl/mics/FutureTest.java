@@ -0,0 +1,102 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Future: callbacks, combinators and the CompletionStage bridge.
+ */
+class FutureTest {
+
+    /**
+     * Test #1: Callbacks run once, in registration order, and late callbacks run immediately.
+     */
+    @Test
+    void testOnComplete_runsInOrder() {
+        Future<String> future = new Future<>();
+        List<String> calls = new ArrayList<>();
+        future.onComplete(r -> calls.add("a:" + r));
+        future.onComplete(r -> calls.add("b:" + r));
+        assertTrue(calls.isEmpty());
+
+        future.resolve("x");
+        future.resolve("y");
+        future.onComplete(r -> calls.add("c:" + r));
+        assertEquals(Arrays.asList("a:x", "b:x", "c:x"), calls);
+    }
+
+    /**
+     * Test #2: allOf waits for every Future and keeps their order; anyOf takes the first result.
+     */
+    @Test
+    void testAllOfAndAnyOf() {
+        Future<Integer> first = new Future<>();
+        Future<Integer> second = new Future<>();
+        Future<List<Integer>> all = Future.allOf(Arrays.asList(first, second));
+        Future<Integer> any = Future.anyOf(Arrays.asList(first, second));
+
+        second.resolve(2);
+        assertFalse(all.isDone());
+        assertEquals(2, any.get(0, TimeUnit.MILLISECONDS));
+
+        first.resolve(1);
+        assertEquals(Arrays.asList(1, 2), all.get(0, TimeUnit.MILLISECONDS));
+        assertTrue(Future.allOf(new ArrayList<Future<Integer>>()).isDone());
+    }
+
+    /**
+     * Test #3: get() blocks until another thread resolves, and the CompletionStage bridge works both ways.
+     */
+    @Test
+    void testGetAndCompletionStage() throws Exception {
+        Future<String> future = new Future<>();
+        CompletableFuture<String> stage = future.toCompletionStage().toCompletableFuture();
+        Thread resolver = new Thread(() -> future.resolve("done"));
+        resolver.start();
+        assertEquals("done", future.get());
+        assertEquals("done", stage.get(1, TimeUnit.SECONDS));
+        resolver.join();
+
+        CompletableFuture<String> source = new CompletableFuture<>();
+        Future<String> bridged = Future.fromCompletionStage(source);
+        assertNull(bridged.get(10, TimeUnit.MILLISECONDS), "timed get returns null while pending");
+        source.complete("later");
+        assertEquals("later", bridged.get());
+    }
+
+    /**
+     * Test #4: Timed gets that run out do not leave a callback behind each.
+     *
+     * Postcondition:
+     *  - After many timed-out gets the Future holds a single waiter, and resolving it still
+     *    wakes a getter blocked on it.
+     */
+    @Test
+    void testTimedGet_reusesWaiter() throws InterruptedException {
+        Future<String> future = new Future<>();
+        for (int i = 0; i < 100; ++i) {
+            assertNull(future.get(1, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(1, future.callbackCount());
+
+        Thread resolver = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            future.resolve("done");
+        });
+        resolver.start();
+        assertEquals("done", future.get(5, TimeUnit.SECONDS));
+        resolver.join();
+        assertEquals(0, future.callbackCount());
+    }
+}
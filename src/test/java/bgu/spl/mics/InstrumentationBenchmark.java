@@ -0,0 +1,111 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A standalone benchmark of the overhead of {@link BusMetrics} at full message rate.
+ * <p>
+ * Sender threads push events with an empty callback at a pool of handler services as fast as
+ * they can, alternating rounds with the metrics enabled and disabled, and report the median
+ * throughput of each. Empty callbacks make this the worst case: real callbacks dilute it.
+ * The handled counts are always kept, so this measures the sampled timing; the counts cost
+ * one ordered store per message.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes bgu.spl.mics.InstrumentationBenchmark [handlers] [eventsPerRound] [rounds]
+ */
+public class InstrumentationBenchmark {
+
+    private static class WorkEvent implements Event<Boolean> {
+    }
+
+    private static class StopBroadcast implements Broadcast {
+    }
+
+    private static class Handler extends MicroService {
+        private final CountDownLatch ready;
+        private volatile CountDownLatch handled;
+
+        Handler(String name, CountDownLatch ready) {
+            super(name);
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(WorkEvent.class, e -> {
+                complete(e, true);
+                handled.countDown();
+            });
+            subscribeBroadcast(StopBroadcast.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int handlers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int events = args.length > 1 ? Integer.parseInt(args[1]) : 400_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+
+        MessageBusImpl bus = MessageBusImpl.getInstance();
+        CountDownLatch ready = new CountDownLatch(handlers);
+        List<Handler> services = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < handlers; ++i) {
+            Handler h = new Handler("handler-" + i, ready);
+            services.add(h);
+            Thread t = new Thread(h);
+            threads.add(t);
+            t.start();
+        }
+        ready.await();
+
+        System.out.println("handlers=" + handlers + ", events per round=" + events + ", rounds=" + rounds);
+        // Warm up both paths before measuring
+        round(bus, services, events, true);
+        round(bus, services, events, false);
+
+        double[] on = new double[rounds];
+        double[] off = new double[rounds];
+        for (int r = 0; r < rounds; ++r) {
+            on[r] = round(bus, services, events, true);
+            off[r] = round(bus, services, events, false);
+        }
+        double onMedian = median(on);
+        double offMedian = median(off);
+        System.out.printf("metrics off: %,12.0f events/s%n", offMedian);
+        System.out.printf("metrics on : %,12.0f events/s%n", onMedian);
+        System.out.printf("overhead   : %6.2f %%%n", (offMedian - onMedian) / offMedian * 100);
+        LatencyHistogram queued = bus.getMetrics().getQueueLatencies().get("WorkEvent");
+        System.out.printf("queue latency p50=%.1f us, p99=%.1f us over %d samples%n",
+                queued.getP50Micros(), queued.getP99Micros(), queued.getCount());
+
+        bus.sendBroadcast(new StopBroadcast());
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    private static double round(MessageBusImpl bus, List<Handler> services, int events, boolean enabled)
+            throws InterruptedException {
+        bus.getMetrics().setEnabled(enabled);
+        CountDownLatch handled = new CountDownLatch(events);
+        for (Handler h : services) {
+            h.handled = handled;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < events; ++i) {
+            bus.sendEvent(new WorkEvent());
+        }
+        handled.await();
+        return events / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,169 @@
+package bgu.spl.mics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A standalone benchmark of a clock paced by {@link MicroService#awaitQuiescence()} against
+ * one that sleeps a fixed time per tick.
+ * <p>
+ * Worker services spin for a fixed time on every tick and send an event to a sink, which
+ * spins as well, so every tick causes a second round of messages. Ticks coalesce like the
+ * simulation's, so a sleeping clock that is faster than the workers shows up as collapsed
+ * ticks rather than as a growing backlog; a lockstep clock should collapse none.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes bgu.spl.mics.LockstepBenchmark [workers] [ticks] [workMicros]
+ */
+public class LockstepBenchmark {
+
+    private static class BenchTick implements CoalescingBroadcast<BenchTick> {
+        private final int first;
+        private final int last;
+
+        BenchTick(int first, int last) {
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        public BenchTick coalesce(BenchTick newer) {
+            return new BenchTick(first, newer.last);
+        }
+    }
+
+    private static class WorkDone implements Event<Boolean> {
+    }
+
+    private static class StopBroadcast implements Broadcast {
+    }
+
+    private static class Clock extends MicroService {
+        private final int ticks;
+        // Sleep per tick, or negative to wait for quiescence instead
+        private final int sleepMillis;
+        private final CountDownLatch ready;
+        private final CountDownLatch done;
+        private long start;
+        private long elapsed;
+
+        Clock(int ticks, int sleepMillis, CountDownLatch ready, CountDownLatch done) {
+            super("clock");
+            this.ticks = ticks;
+            this.sleepMillis = sleepMillis;
+            this.ready = ready;
+            this.done = done;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(BenchTick.class, tick -> {
+                try {
+                    if (sleepMillis < 0) {
+                        awaitQuiescence();
+                    }
+                    else {
+                        Thread.sleep(sleepMillis);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (tick.last < ticks) {
+                    sendBroadcast(new BenchTick(tick.last + 1, tick.last + 1));
+                }
+                else {
+                    elapsed = System.nanoTime() - start;
+                    sendBroadcast(new StopBroadcast());
+                    terminate();
+                    done.countDown();
+                }
+            });
+            ready.countDown();
+        }
+
+        void begin() {
+            start = System.nanoTime();
+            sendBroadcast(new BenchTick(1, 1));
+        }
+    }
+
+    private static class Worker extends MicroService {
+        private final long workNanos;
+        private final CountDownLatch ready;
+        private final AtomicLong collapsed;
+
+        Worker(String name, long workNanos, CountDownLatch ready, AtomicLong collapsed) {
+            super(name);
+            this.workNanos = workNanos;
+            this.ready = ready;
+            this.collapsed = collapsed;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(BenchTick.class, tick -> {
+                collapsed.addAndGet(tick.last - tick.first);
+                spin(workNanos);
+                sendEvent(new WorkDone());
+            });
+            subscribeEvent(WorkDone.class, e -> {
+                spin(workNanos);
+                complete(e, true);
+            });
+            subscribeBroadcast(StopBroadcast.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int workers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int workMicros = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        System.out.println("workers=" + workers + ", ticks=" + ticks + ", work per message=" + workMicros + " us");
+        // Warm up before measuring
+        run(workers, ticks / 4, workMicros, -1);
+        for (int sleepMillis : new int[] {1, 10}) {
+            report("sleep " + sleepMillis + " ms", ticks, run(workers, ticks, workMicros, sleepMillis));
+        }
+        report("lockstep", ticks, run(workers, ticks, workMicros, -1));
+    }
+
+    private static void report(String mode, int ticks, long[] result) {
+        System.out.printf("%-12s: %,10.0f ticks/s, %d ticks collapsed%n", mode, ticks / (result[0] / 1e9), result[1]);
+    }
+
+    // Returns the elapsed nanoseconds and the number of ticks the workers saw collapsed
+    private static long[] run(int workers, int ticks, int workMicros, int sleepMillis) throws InterruptedException {
+        try (SimulationContext.Scope scope = new SimulationContext("lockstep-benchmark").bind()) {
+            CountDownLatch ready = new CountDownLatch(workers + 1);
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicLong collapsed = new AtomicLong();
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < workers; ++i) {
+                threads.add(new Thread(new Worker("worker-" + i, workMicros * 1000L, ready, collapsed)));
+            }
+            Clock clock = new Clock(ticks, sleepMillis, ready, done);
+            threads.add(new Thread(clock));
+            for (Thread t : threads) {
+                t.start();
+            }
+            ready.await();
+            clock.begin();
+            done.await();
+            for (Thread t : threads) {
+                t.join();
+            }
+            return new long[] {clock.elapsed, collapsed.get()};
+        }
+    }
+
+    private static void spin(long nanos) {
+        long until = System.nanoTime() + nanos;
+        while (System.nanoTime() < until) {
+            // busy
+        }
+    }
+}
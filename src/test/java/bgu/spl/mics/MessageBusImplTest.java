@@ -0,0 +1,329 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for MessageBusImpl, focusing on subscription, dispatch and unregistration.
+ * The bus is a singleton, so every test registers fresh services and unregisters them afterwards.
+ */
+class MessageBusImplTest {
+
+    private static class TestEvent implements Event<String> {
+    }
+
+    private static class TestBroadcast implements Broadcast {
+    }
+
+    private static class RoutedEvent implements Event<String> {
+    }
+
+    private static class UrgentBroadcast implements Broadcast, ControlMessage {
+    }
+
+    private static class DummyService extends MicroService {
+        DummyService(String name) {
+            super(name);
+        }
+
+        @Override
+        protected void initialize() {
+        }
+    }
+
+    private MessageBusImpl bus;
+    private MicroService first;
+    private MicroService second;
+
+    /**
+     * Precondition:
+     *  - Two services are registered, neither is subscribed to anything.
+     */
+    @BeforeEach
+    void setUp() {
+        bus = MessageBusImpl.getInstance();
+        first = new DummyService("first");
+        second = new DummyService("second");
+        bus.register(first);
+        bus.register(second);
+    }
+
+    @AfterEach
+    void tearDown() {
+        bus.unregister(first);
+        bus.unregister(second);
+    }
+
+    /**
+     * Test #1: Events are handed out round-robin between the subscribers.
+     *
+     * Postcondition:
+     *  - Each of the two services receives exactly one of two sent events.
+     */
+    @Test
+    void testSendEvent_roundRobin() throws InterruptedException {
+        bus.subscribeEvent(TestEvent.class, first);
+        bus.subscribeEvent(TestEvent.class, second);
+
+        TestEvent e1 = new TestEvent();
+        TestEvent e2 = new TestEvent();
+        assertNotNull(bus.sendEvent(e1));
+        assertNotNull(bus.sendEvent(e2));
+
+        assertEquals(1, bus.getQueues().get(first).size(), "first should hold exactly one event");
+        assertEquals(1, bus.getQueues().get(second).size(), "second should hold exactly one event");
+        assertNotSame(bus.awaitMessage(first), bus.awaitMessage(second));
+    }
+
+    /**
+     * Test #2: A broadcast reaches every subscriber, and an unregistered service
+     * is no longer considered a subscriber.
+     */
+    @Test
+    void testSendBroadcast_afterUnregister() throws InterruptedException {
+        bus.subscribeBroadcast(TestBroadcast.class, first);
+        bus.subscribeBroadcast(TestBroadcast.class, second);
+
+        TestBroadcast b = new TestBroadcast();
+        bus.sendBroadcast(b);
+        assertSame(b, bus.awaitMessage(first));
+        assertSame(b, bus.awaitMessage(second));
+
+        bus.unregister(second);
+        assertFalse(bus.getSubscribers(TestBroadcast.class).contains(second));
+        bus.sendBroadcast(new TestBroadcast());
+        assertEquals(1, bus.getQueues().get(first).size());
+        assertNull(bus.getQueues().get(second));
+    }
+
+    /**
+     * Test #3: complete() resolves the future returned by sendEvent(),
+     * and sending with no subscribers returns null.
+     */
+    @Test
+    void testComplete_resolvesFuture() {
+        assertNull(bus.sendEvent(new TestEvent()), "No subscriber yet, expected null");
+
+        bus.subscribeEvent(TestEvent.class, first);
+        TestEvent e = new TestEvent();
+        Future<String> future = bus.sendEvent(e);
+        assertFalse(future.isDone());
+
+        bus.complete(e, "done");
+        assertTrue(future.isDone());
+        assertEquals("done", future.get());
+    }
+
+    /**
+     * Test #4: A completed event is no longer tracked by the future registry.
+     *
+     * Postcondition:
+     *  - The live-entry count is back to its value before sending,
+     *  - The eviction count grew by one.
+     */
+    @Test
+    void testComplete_evictsFuture() {
+        bus.subscribeEvent(TestEvent.class, first);
+        FutureRegistry registry = bus.getEventFutures();
+        TestEvent e = new TestEvent();
+
+        Future<String> future = bus.sendEvent(e);
+        int liveBefore = registry.size();
+        long completedBefore = registry.getCompletedEvictions();
+
+        bus.complete(e, "done");
+        assertEquals(liveBefore - 1, registry.size());
+        assertEquals(completedBefore + 1, registry.getCompletedEvictions());
+        assertEquals("done", future.get());
+
+        // Completing twice must not resolve or count anything again
+        bus.complete(e, "again");
+        assertEquals(completedBefore + 1, registry.getCompletedEvictions());
+        assertEquals("done", future.get());
+    }
+
+    /**
+     * Test #5: awaitMessages drains at most {@code max} queued messages, in queue order.
+     */
+    @Test
+    void testAwaitMessages_drainsInOrder() throws InterruptedException {
+        bus.subscribeBroadcast(TestBroadcast.class, first);
+        TestBroadcast b1 = new TestBroadcast();
+        TestBroadcast b2 = new TestBroadcast();
+        TestBroadcast b3 = new TestBroadcast();
+        bus.sendBroadcast(b1);
+        bus.sendBroadcast(b2);
+        bus.sendBroadcast(b3);
+
+        List<Message> batch = new ArrayList<>();
+        assertEquals(2, bus.awaitMessages(first, batch, 2));
+        assertSame(b1, batch.get(0));
+        assertSame(b2, batch.get(1));
+        assertEquals(1, bus.awaitMessages(first, batch, 2));
+        assertSame(b3, batch.get(2));
+    }
+
+    /**
+     * Test #6: With least-loaded routing, events go to the subscriber with the fewest events
+     * not completed yet, including those it has taken from its queue and holds.
+     *
+     * Precondition:
+     *  - first has taken two routed events from its queue without completing them, then second
+     *    subscribed.
+     *
+     * Postcondition:
+     *  - The next events go to second; once first completed its backlog it gets events again.
+     */
+    @Test
+    void testSendEvent_leastLoadedRouting() throws InterruptedException {
+        bus.setRoutingStrategy(RoutedEvent.class, RoutingStrategies.leastLoaded());
+        bus.subscribeEvent(RoutedEvent.class, first);
+        List<RoutedEvent> backlog = Arrays.asList(new RoutedEvent(), new RoutedEvent());
+        for (RoutedEvent e : backlog) {
+            bus.sendEvent(e);
+            assertSame(e, bus.awaitMessage(first));
+        }
+        bus.subscribeEvent(RoutedEvent.class, second);
+        assertEquals(0, bus.getQueues().get(first).size(), "first holds its backlog out of its queue");
+
+        bus.sendEvent(new RoutedEvent());
+        bus.sendEvent(new RoutedEvent());
+        assertEquals(0, bus.getQueues().get(first).size(), "first has a backlog and should get nothing");
+        assertEquals(2, bus.getQueues().get(second).size());
+
+        for (RoutedEvent e : backlog) {
+            bus.complete(e, null);
+        }
+        bus.sendEvent(new RoutedEvent());
+        assertEquals(1, bus.getQueues().get(first).size(), "first completed its backlog");
+    }
+
+    /**
+     * Test #7: A control message is taken before the data messages queued ahead of it.
+     */
+    @Test
+    void testControlMessage_overtakesData() throws InterruptedException {
+        bus.subscribeBroadcast(TestBroadcast.class, first);
+        bus.subscribeBroadcast(UrgentBroadcast.class, first);
+        TestBroadcast data = new TestBroadcast();
+        UrgentBroadcast urgent = new UrgentBroadcast();
+        bus.sendBroadcast(data);
+        bus.sendBroadcast(urgent);
+
+        assertEquals(2, bus.getQueues().get(first).size());
+        assertSame(urgent, bus.awaitMessage(first));
+        assertSame(data, bus.awaitMessage(first));
+        assertEquals(0, bus.getQueues().get(first).size(), "the control lane must be counted once");
+    }
+
+    /**
+     * Test #8: A Future its sender only follows through a callback is kept until the event is completed.
+     *
+     * Postcondition:
+     *  - After the sender dropped the Future and a GC ran, completing the event still runs the callback.
+     */
+    @Test
+    void testComplete_runsCallbackOfDroppedFuture() throws InterruptedException {
+        bus.subscribeEvent(TestEvent.class, first);
+        TestEvent e = new TestEvent();
+        List<String> results = new ArrayList<>();
+        bus.sendEvent(e).onComplete(results::add);
+
+        System.gc();
+        Thread.sleep(50);
+        bus.complete(e, "done");
+        assertEquals(Collections.singletonList("done"), results);
+    }
+
+    /**
+     * Test #9: A topic follows the subscriptions of its type made after it was obtained.
+     *
+     * Postcondition:
+     *  - A broadcast published through the topic reaches a later subscriber, and no longer
+     *    reaches it once it unregistered.
+     */
+    @Test
+    void testTopic_followsSubscriptions() throws InterruptedException {
+        Topic<TestBroadcast> topic = bus.topic(TestBroadcast.class);
+        topic.publish(new TestBroadcast());
+        assertEquals(0, bus.getQueues().get(first).size());
+
+        bus.subscribeBroadcast(TestBroadcast.class, first);
+        bus.subscribeBroadcast(TestBroadcast.class, second);
+        TestBroadcast b = new TestBroadcast();
+        topic.publish(b);
+        assertSame(b, bus.awaitMessage(first));
+        assertSame(b, bus.awaitMessage(second));
+
+        bus.unregister(second);
+        topic.publish(new TestBroadcast());
+        assertEquals(1, bus.getQueues().get(first).size());
+    }
+
+    /**
+     * Test #10: The bus is quiescent only once every service handled what it was sent.
+     *
+     * Postcondition:
+     *  - A broadcast keeps the bus busy while queued and while taken but not yet handled;
+     *    the service passed as excluded is not waited for.
+     */
+    @Test
+    void testQuiescence_waitsForHandledMessages() throws InterruptedException {
+        try (SimulationContext.Scope scope = new SimulationContext("quiescence").bind()) {
+            MessageBusImpl isolated = MessageBusImpl.getInstance();
+            MicroService worker = new DummyService("worker");
+            MicroService clock = new DummyService("clock");
+            isolated.register(worker);
+            isolated.register(clock);
+            worker.subscribeBroadcast(TestBroadcast.class, b -> { });
+            clock.subscribeBroadcast(TestBroadcast.class, b -> { });
+            assertTrue(isolated.isQuiescent(null));
+
+            isolated.sendBroadcast(new TestBroadcast());
+            assertFalse(isolated.isQuiescent(clock));
+            List<Message> batch = new ArrayList<>();
+            isolated.awaitMessages(worker, batch, 8);
+            assertFalse(isolated.isQuiescent(clock));
+
+            worker.dispatch(batch);
+            assertTrue(isolated.isQuiescent(clock));
+            assertFalse(isolated.isQuiescent(null));
+        }
+    }
+
+    /**
+     * Test #11: Events that are never completed and whose senders dropped their Futures leave
+     * nothing behind in the bus.
+     *
+     * Precondition:
+     *  - first took many events from its queue and completed none of them.
+     *
+     * Postcondition:
+     *  - Once the Futures were collected, the registry holds none of them and first's load is
+     *    back to zero.
+     */
+    @Test
+    void testSendEvent_uncompletedEventsStayBounded() throws InterruptedException {
+        bus.subscribeEvent(TestEvent.class, first);
+        int liveBefore = bus.getLiveFutures();
+        for (int i = 0; i < 10_000; ++i) {
+            bus.sendEvent(new TestEvent());
+            bus.awaitMessage(first);
+        }
+
+        for (int attempt = 0; attempt < 50 && bus.getLiveFutures() > liveBefore; ++attempt) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertTrue(bus.getLiveFutures() <= liveBefore, "dropped Futures must not stay tracked");
+        assertEquals(0, bus.getOutstandingEvents(first), "released events must not count as load");
+    }
+}
@@ -0,0 +1,96 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.SharedMemoryMessageBusTest.EchoBroadcast;
+import bgu.spl.mics.SharedMemoryMessageBusTest.PingEvent;
+import bgu.spl.mics.SharedMemoryMessageBusTest.StopBroadcast;
+import bgu.spl.mics.SharedMemoryMessageBusTest.TestCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for MessageLog: a bus recorder writes what is sent, in order and with its tick, and a
+ * reader gives it back.
+ */
+class MessageLogTest {
+
+    private static class UnsupportedBroadcast implements Broadcast {
+    }
+
+    // An echo starts the tick of its value
+    private static final ToIntFunction<Message> CLOCK = m -> m instanceof EchoBroadcast ? ((EchoBroadcast) m).value : -1;
+
+    /**
+     * Test #1: Everything sent on a recording bus comes back in order, with the last tick
+     * started and its type, whether or not anyone subscribed; types the codec does not
+     * support are left out.
+     */
+    @Test
+    void testRecorder_keepsOrderAndTicks(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("bus.log");
+        try (SimulationContext.Scope scope = new SimulationContext("log-test").bind()) {
+            MessageBusImpl bus = MessageBusImpl.getInstance();
+            MessageLog.Writer writer = new MessageLog.Writer(file, new TestCodec(), CLOCK);
+            bus.setRecorder(writer::record);
+            bus.sendEvent(new PingEvent(1));
+            bus.sendBroadcast(new EchoBroadcast(4));
+            bus.sendBroadcast(new UnsupportedBroadcast());
+            bus.topic(StopBroadcast.class).publish(new StopBroadcast());
+            bus.sendEvent(new PingEvent(2));
+            bus.setRecorder(null);
+            bus.sendEvent(new PingEvent(3));
+            writer.close();
+        }
+
+        try (MessageLog.Reader reader = new MessageLog.Reader(file, new TestCodec())) {
+            MessageLog.Entry entry = reader.next();
+            assertEquals(PingEvent.class, entry.getType());
+            assertEquals(0, entry.getTick());
+            assertEquals(1, ((PingEvent) entry.decode()).value);
+
+            entry = reader.next();
+            assertEquals(EchoBroadcast.class, entry.getType());
+            assertEquals(4, entry.getTick());
+
+            entry = reader.next();
+            assertEquals(StopBroadcast.class, entry.getType());
+            assertEquals(4, entry.getTick());
+
+            entry = reader.next();
+            assertEquals(2, ((PingEvent) entry.decode()).value);
+            assertNull(reader.next(), "nothing sent after the recording stopped should be logged");
+        }
+    }
+
+    /**
+     * Test #2: A log cut off in the middle of a record, as by a killed run, ends at its last
+     * complete record.
+     */
+    @Test
+    void testReader_stopsAtPartialRecord(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("bus.log");
+        MessageLog.Writer writer = new MessageLog.Writer(file, new TestCodec(), CLOCK);
+        for (int i = 0; i < 10; ++i) {
+            writer.record(new PingEvent(i));
+        }
+        writer.close();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        int read = 0;
+        try (MessageLog.Reader reader = new MessageLog.Reader(file, new TestCodec())) {
+            for (MessageLog.Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                assertEquals(read++, ((PingEvent) entry.decode()).value);
+            }
+        }
+        assertEquals(9, read);
+    }
+}
@@ -0,0 +1,100 @@
+package bgu.spl.mics;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for PrefetchingListReader: elements come back in order up to the tick asked for, and
+ * the reader stays a bounded number of ticks ahead.
+ */
+class PrefetchingListReaderTest {
+
+    // [{"time": 0}, {"time": 1}, ...], one element per tick
+    private static String timedList(int elements) {
+        StringBuilder json = new StringBuilder("[");
+        for (int time = 0; time < elements; ++time) {
+            json.append(time == 0 ? "" : ", ").append("{\"time\": ").append(time).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private static int readTime(JsonReader reader) throws IOException {
+        reader.beginObject();
+        reader.nextName();
+        int time = reader.nextInt();
+        reader.endObject();
+        return time;
+    }
+
+    /**
+     * Test #1: Polling hands out the elements due by a tick, in order, then reports the end.
+     *
+     * Postcondition:
+     *  - poll(3) gives times 0 to 3 and then null, a later poll goes on from 4, and once
+     *    every element was taken the reader is exhausted.
+     */
+    @Test
+    void testPoll_inOrderUpToTick() throws IOException {
+        try (PrefetchingListReader<Integer> reader = new PrefetchingListReader<>("test",
+                () -> new JsonReader(new StringReader(timedList(10))), PrefetchingListReaderTest::readTime, t -> t, 2)) {
+            for (int time = 0; time <= 3; ++time) {
+                assertEquals(time, reader.poll(3));
+            }
+            assertNull(reader.poll(3));
+            assertFalse(reader.isExhausted());
+            assertEquals(4, reader.poll(20));
+            for (int time = 5; time < 10; ++time) {
+                assertEquals(time, reader.poll(20));
+            }
+            assertNull(reader.poll(20));
+            assertTrue(reader.isExhausted());
+        }
+    }
+
+    /**
+     * Test #2: The reader does not run ahead of the last tick asked for by more than its window.
+     *
+     * Postcondition:
+     *  - With 3 ticks of read-ahead, after poll(0) of a list of 1000 elements the reader stops
+     *    at time 4, the first element past the window, and reads on when a later tick is asked for.
+     */
+    @Test
+    void testPrefetch_staysWithinWindow() throws IOException, InterruptedException {
+        AtomicInteger read = new AtomicInteger();
+        try (PrefetchingListReader<Integer> reader = new PrefetchingListReader<>("test",
+                () -> new JsonReader(new StringReader(timedList(1000))), json -> {
+                    read.incrementAndGet();
+                    return readTime(json);
+                }, t -> t, 3)) {
+            assertEquals(0, reader.poll(0));
+            Thread.sleep(200);
+            assertEquals(5, read.get());
+
+            assertEquals(1, reader.poll(10));
+            Thread.sleep(200);
+            assertEquals(15, read.get());
+        }
+    }
+
+    /**
+     * Test #3: A list that cannot be read fails the consumer rather than looking empty.
+     *
+     * Postcondition:
+     *  - Elements before the broken one are handed out, then poll throws IOException.
+     */
+    @Test
+    void testPoll_reportsReadFailure() throws IOException {
+        try (PrefetchingListReader<Integer> reader = new PrefetchingListReader<>("test",
+                () -> new JsonReader(new StringReader("[{\"time\": 0}, {\"time\": \"late\"}]")),
+                PrefetchingListReaderTest::readTime, t -> t, 2)) {
+            assertEquals(0, reader.poll(5));
+            assertThrows(IOException.class, () -> reader.poll(5));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for RingBufferMailbox: ordering, overflow past the ring capacity,
+ * and concurrent producers with a single consumer.
+ */
+class RingBufferMailboxTest {
+
+    private static class Numbered implements Message {
+        private final int producer;
+        private final int seq;
+
+        Numbered(int producer, int seq) {
+            this.producer = producer;
+            this.seq = seq;
+        }
+    }
+
+    /**
+     * Test #1: Offering more messages than the ring holds keeps FIFO order,
+     * the extra messages spilling into the overflow queue.
+     */
+    @Test
+    void testOffer_pastCapacityKeepsOrder() throws InterruptedException {
+        RingBufferMailbox mailbox = new RingBufferMailbox(4);
+        assertEquals(4, mailbox.capacity());
+        for (int i = 0; i < 10; ++i) {
+            mailbox.offer(new Numbered(0, i));
+        }
+        assertEquals(10, mailbox.size());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, ((Numbered) mailbox.take()).seq);
+        }
+        assertEquals(0, mailbox.size());
+    }
+
+    /**
+     * Test #2: Several producers racing a blocked consumer deliver every message once,
+     * and each producer's messages arrive in the order it sent them.
+     */
+    @Test
+    void testTake_concurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 20000;
+        RingBufferMailbox mailbox = new RingBufferMailbox(64);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            final int id = p;
+            Thread t = new Thread(() -> {
+                for (int i = 0; i < perProducer; ++i) {
+                    mailbox.offer(new Numbered(id, i));
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+
+        int[] next = new int[producers];
+        List<Message> batch = new ArrayList<>();
+        int received = 0;
+        while (received < producers * perProducer) {
+            batch.add(mailbox.take());
+            mailbox.drainTo(batch, 15);
+            for (Message m : batch) {
+                Numbered n = (Numbered) m;
+                assertEquals(next[n.producer], n.seq, "messages of one producer must stay in order");
+                ++next[n.producer];
+            }
+            received += batch.size();
+            batch.clear();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, mailbox.size());
+    }
+}
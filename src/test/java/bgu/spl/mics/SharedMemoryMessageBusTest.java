@@ -0,0 +1,226 @@
+package bgu.spl.mics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SharedMemoryMessageBus: frames cross a MappedRing intact and in order, and events,
+ * broadcasts and Future completion work between this JVM and a worker JVM.
+ */
+class SharedMemoryMessageBusTest {
+
+    static class PingEvent implements Event<Boolean> {
+        final int value;
+
+        PingEvent(int value) {
+            this.value = value;
+        }
+    }
+
+    static class EchoBroadcast implements Broadcast {
+        final int value;
+
+        EchoBroadcast(int value) {
+            this.value = value;
+        }
+    }
+
+    static class StopBroadcast implements Broadcast {
+    }
+
+    static class TestCodec implements MessageCodec {
+        @Override
+        public boolean supports(Class<? extends Message> type) {
+            return type == PingEvent.class || type == EchoBroadcast.class || type == StopBroadcast.class;
+        }
+
+        @Override
+        public void encode(Message m, ByteBuffer out) {
+            if (m instanceof PingEvent) {
+                out.put((byte) 1).putInt(((PingEvent) m).value);
+            }
+            else if (m instanceof EchoBroadcast) {
+                out.put((byte) 2).putInt(((EchoBroadcast) m).value);
+            }
+            else {
+                out.put((byte) 3);
+            }
+        }
+
+        @Override
+        public Message decode(ByteBuffer in) {
+            byte tag = in.get();
+            return tag == 1 ? new PingEvent(in.getInt()) : tag == 2 ? new EchoBroadcast(in.getInt()) : new StopBroadcast();
+        }
+
+        @Override
+        public void encodeResult(Object result, ByteBuffer out) {
+            out.put(result == null ? (byte) 0 : (Boolean) result ? (byte) 1 : (byte) 2);
+        }
+
+        @Override
+        public Object decodeResult(ByteBuffer in) {
+            byte tag = in.get();
+            return tag == 0 ? null : tag == 1;
+        }
+    }
+
+    /**
+     * Completes every ping with whether its value is even and echoes it as a broadcast.
+     */
+    static class EchoService extends MicroService {
+        private final CountDownLatch ready;
+
+        EchoService(CountDownLatch ready) {
+            super("echo");
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeEvent(PingEvent.class, ping -> {
+                complete(ping, ping.value % 2 == 0);
+                sendBroadcast(new EchoBroadcast(ping.value));
+            });
+            subscribeBroadcast(StopBroadcast.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    static class EchoListener extends MicroService {
+        private final CountDownLatch ready;
+        final List<Integer> echoes = new CopyOnWriteArrayList<>();
+
+        EchoListener(CountDownLatch ready) {
+            super("listener");
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(EchoBroadcast.class, b -> echoes.add(b.value));
+            subscribeBroadcast(StopBroadcast.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    /**
+     * The worker JVM: java ...$Worker <directory> <name>
+     */
+    public static class Worker {
+        public static void main(String[] args) throws Exception {
+            SharedMemoryMessageBus bus = new SharedMemoryMessageBus(Paths.get(args[0]), new TestCodec());
+            bus.connect(args[1], 10_000);
+            CountDownLatch ready = new CountDownLatch(1);
+            Thread thread = new Thread(new EchoService(ready));
+            thread.start();
+            ready.await();
+            bus.ready();
+            thread.join();
+            bus.close();
+        }
+    }
+
+    /**
+     * Test #1: Frames of varying sizes pass a small ring in order while it wraps around many times.
+     */
+    @Test
+    void testRing_keepsFramesInOrder(@TempDir Path directory) throws Exception {
+        MappedRing writer = MappedRing.create(directory.resolve("ring"), 256);
+        MappedRing reader = MappedRing.open(directory.resolve("ring"));
+        int frames = 10_000;
+        Thread producer = new Thread(() -> {
+            ByteBuffer frame = ByteBuffer.allocate(128);
+            try {
+                for (int i = 0; i < frames; ++i) {
+                    frame.clear();
+                    for (int j = 0; j <= i % 100; ++j) {
+                        frame.put((byte) (i + j));
+                    }
+                    frame.flip();
+                    writer.write(frame);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        for (int i = 0; i < frames; ++i) {
+            ByteBuffer frame = reader.take();
+            assertEquals(i % 100 + 1, frame.remaining(), "frame " + i + " has the wrong length");
+            for (int j = 0; frame.hasRemaining(); ++j) {
+                assertEquals((byte) (i + j), frame.get(), "frame " + i + " is corrupted");
+            }
+        }
+        producer.join();
+        assertNull(reader.poll());
+        writer.close(true);
+        reader.close();
+    }
+
+    /**
+     * Test #2: Events sent here are handled in a worker JVM, their Futures resolve with the
+     * worker's results, and the worker's broadcasts reach local subscribers.
+     */
+    @Test
+    void testWorkerProcess_completesEvents(@TempDir Path directory) throws Exception {
+        SimulationContext context = new SimulationContext("shm-test");
+        SharedMemoryMessageBus bus;
+        EchoListener listener;
+        CountDownLatch listening = new CountDownLatch(1);
+        try (SimulationContext.Scope scope = context.bind()) {
+            // A small ring makes the frames wrap around
+            bus = new SharedMemoryMessageBus(directory, new TestCodec(), 4096);
+            listener = new EchoListener(listening);
+        }
+        Thread listenerThread = new Thread(listener);
+        listenerThread.start();
+        assertTrue(listening.await(5, TimeUnit.SECONDS));
+        bus.accept("echo");
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process worker = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Worker.class.getName(), directory.toString(), "echo").inheritIO().start();
+        try {
+            assertTrue(bus.awaitReady(30, TimeUnit.SECONDS), "the worker should connect");
+
+            int pings = 500;
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < pings; ++i) {
+                Future<Boolean> future = bus.sendEvent(new PingEvent(i));
+                assertNotNull(future, "the worker's subscription should be known here");
+                futures.add(future);
+            }
+            for (int i = 0; i < pings; ++i) {
+                assertEquals(i % 2 == 0, futures.get(i).get(10, TimeUnit.SECONDS), "result of ping " + i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (listener.echoes.size() < pings && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(pings, listener.echoes.size(), "every echo should arrive once");
+
+            bus.sendBroadcast(new StopBroadcast());
+            assertTrue(worker.waitFor(10, TimeUnit.SECONDS), "the stop broadcast should end the worker");
+            assertEquals(0, worker.exitValue());
+        }
+        finally {
+            worker.destroy();
+            bus.close();
+            listenerThread.join(5000);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SimulationContext: every context owns its own bus and state, and a micro-service
+ * stays in the context it was created in, whatever thread runs it.
+ */
+class SimulationContextTest {
+
+    private static class StopBroadcast implements Broadcast {
+    }
+
+    private static class StoppableService extends MicroService {
+        private final CountDownLatch ready;
+
+        StoppableService(CountDownLatch ready) {
+            super("stoppable");
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(StopBroadcast.class, b -> terminate());
+            ready.countDown();
+        }
+    }
+
+    /**
+     * Test #1: getInstance returns one instance per context, and closing a scope restores the previous binding.
+     */
+    @Test
+    void testBind_separatesInstances() {
+        SimulationContext first = new SimulationContext("first");
+        SimulationContext second = new SimulationContext("second");
+        MessageBusImpl defaultBus = MessageBusImpl.getInstance();
+
+        MessageBusImpl firstBus;
+        try (SimulationContext.Scope outer = first.bind()) {
+            firstBus = MessageBusImpl.getInstance();
+            StatisticalFolder firstStats = StatisticalFolder.getInstance();
+            assertSame(first, SimulationContext.current());
+            assertSame(firstBus, MessageBusImpl.getInstance());
+            try (SimulationContext.Scope inner = second.bind()) {
+                assertNotSame(firstBus, MessageBusImpl.getInstance());
+                assertNotSame(firstStats, StatisticalFolder.getInstance());
+            }
+            assertSame(firstBus, MessageBusImpl.getInstance());
+        }
+        assertSame(SimulationContext.DEFAULT, SimulationContext.current());
+        assertSame(defaultBus, MessageBusImpl.getInstance());
+        assertNotSame(defaultBus, firstBus);
+    }
+
+    /**
+     * Test #2: A service created in a context registers with that context's bus, and
+     * broadcasts sent in another context do not reach it.
+     */
+    @Test
+    void testService_staysInItsContext() throws InterruptedException {
+        SimulationContext context = new SimulationContext("isolated");
+        CountDownLatch ready = new CountDownLatch(1);
+        StoppableService service;
+        MessageBusImpl bus;
+        try (SimulationContext.Scope scope = context.bind()) {
+            service = new StoppableService(ready);
+            bus = MessageBusImpl.getInstance();
+        }
+        Thread thread = new Thread(service);
+        thread.start();
+        assertTrue(ready.await(5, TimeUnit.SECONDS), "the service should initialize");
+        assertTrue(bus.getQueues().containsKey(service));
+        assertFalse(MessageBusImpl.getInstance().getQueues().containsKey(service));
+
+        MessageBusImpl.getInstance().sendBroadcast(new StopBroadcast());
+        thread.join(100);
+        assertTrue(thread.isAlive(), "a broadcast in the default context must not stop the service");
+
+        bus.sendBroadcast(new StopBroadcast());
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertFalse(bus.getQueues().containsKey(service));
+    }
+}
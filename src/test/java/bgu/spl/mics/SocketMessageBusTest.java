@@ -0,0 +1,83 @@
+package bgu.spl.mics;
+
+import bgu.spl.mics.SharedMemoryMessageBusTest.EchoListener;
+import bgu.spl.mics.SharedMemoryMessageBusTest.EchoService;
+import bgu.spl.mics.SharedMemoryMessageBusTest.PingEvent;
+import bgu.spl.mics.SharedMemoryMessageBusTest.StopBroadcast;
+import bgu.spl.mics.SharedMemoryMessageBusTest.TestCodec;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SocketMessageBus: a host and a worker bus, each in a SimulationContext of its own,
+ * exchange events, results and broadcasts over a loopback connection.
+ */
+class SocketMessageBusTest {
+
+    /**
+     * Test #1: Events sent by the host are handled by the worker, their Futures resolve with the
+     * worker's results, and the worker's broadcasts reach the host's subscribers.
+     */
+    @Test
+    void testLoopbackWorker_completesEvents() throws Exception {
+        SocketMessageBus host;
+        EchoListener listener;
+        CountDownLatch listening = new CountDownLatch(1);
+        try (SimulationContext.Scope scope = new SimulationContext("tcp-host").bind()) {
+            host = new SocketMessageBus(new TestCodec());
+            listener = new EchoListener(listening);
+        }
+        Thread listenerThread = new Thread(listener);
+        listenerThread.start();
+        assertTrue(listening.await(5, TimeUnit.SECONDS));
+        host.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+
+        SocketMessageBus worker;
+        Thread echoThread;
+        CountDownLatch echoing = new CountDownLatch(1);
+        try (SimulationContext.Scope scope = new SimulationContext("tcp-worker").bind()) {
+            worker = new SocketMessageBus(new TestCodec());
+            worker.connect("echo", new InetSocketAddress(InetAddress.getLoopbackAddress(), host.getPort()), 10_000);
+            echoThread = new Thread(new EchoService(echoing));
+        }
+        echoThread.start();
+        try {
+            assertTrue(echoing.await(5, TimeUnit.SECONDS));
+            worker.ready();
+            assertTrue(host.awaitReady(10, TimeUnit.SECONDS), "the worker should connect");
+
+            int pings = 2000;
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < pings; ++i) {
+                Future<Boolean> future = host.sendEvent(new PingEvent(i));
+                assertNotNull(future, "the worker's subscription should be known here");
+                futures.add(future);
+            }
+            for (int i = 0; i < pings; ++i) {
+                assertEquals(i % 2 == 0, futures.get(i).get(10, TimeUnit.SECONDS), "result of ping " + i);
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (listener.echoes.size() < pings && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(pings, listener.echoes.size(), "every echo should arrive once");
+
+            host.sendBroadcast(new StopBroadcast());
+            echoThread.join(10_000);
+            assertFalse(echoThread.isAlive(), "the stop broadcast should reach the worker");
+        }
+        finally {
+            worker.close();
+            host.close();
+            listenerThread.join(5000);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.SimulationContext;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for GurionRockReplayer: replaying a recorded run gives the output of the run.
+ */
+class GurionRockReplayerTest {
+
+    /**
+     * Test #1: A run recorded with the discrete-event clock replays to the same statistics,
+     * counting the ticks it skipped.
+     *
+     * Precondition:
+     *  - The example input was run with the discrete-event clock and "BusLog".
+     *
+     * Postcondition:
+     *  - The replay's output has the run's system runtime, and the same objects and landmarks.
+     */
+    @Test
+    void testReplay_discreteEventRuntime(@TempDir Path directory) throws Exception {
+        Path input = Paths.get("example input");
+        for (String file : new String[] {"camera_data.json", "lidar_data.json", "pose_data.json"}) {
+            Files.copy(input.resolve(file), directory.resolve(file));
+        }
+        JsonObject config = read(input.resolve("configuration_file.json"));
+        config.addProperty("TickUnit", "ms");
+        config.addProperty("Clock", "discrete-event");
+        config.addProperty("BusLog", "bus.log");
+        Path configFile = directory.resolve("configuration_file.json");
+        Files.write(configFile, config.toString().getBytes(StandardCharsets.UTF_8));
+
+        try (SimulationContext.Scope scope = new SimulationContext("recorded").bind()) {
+            GurionRockRunner.run(configFile.toString());
+        }
+        Path replayDirectory = Files.createDirectory(directory.resolve("replay"));
+        try (SimulationContext.Scope scope = new SimulationContext("replayed").bind()) {
+            assertTrue(GurionRockReplayer.replay(directory.resolve("bus.log"), replayDirectory.toString()) > 0);
+        }
+
+        JsonObject recorded = read(directory.resolve("output_file.json"));
+        JsonObject replayed = read(replayDirectory.resolve("output_file.json"));
+        assertEquals(recorded.get("systemRuntime"), replayed.get("systemRuntime"));
+        assertEquals(recorded.get("numDetectedObjects"), replayed.get("numDetectedObjects"));
+        assertEquals(recorded.get("numTrackedObjects"), replayed.get("numTrackedObjects"));
+        assertEquals(recorded.get("numLandmarks"), replayed.get("numLandmarks"));
+    }
+
+    private static JsonObject read(Path file) throws IOException {
+        return JsonParser.parseString(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+}
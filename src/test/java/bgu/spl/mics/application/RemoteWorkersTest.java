@@ -0,0 +1,94 @@
+package bgu.spl.mics.application;
+
+import bgu.spl.mics.SimulationContext;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for a simulation whose LiDAR workers run elsewhere, each side in a SimulationContext of
+ * its own standing for a process, linked by memory-mapped rings.
+ */
+class RemoteWorkersTest {
+
+    /**
+     * Test #1: With every LiDAR worker remote, the simulation counts what they tracked and they
+     * stop once the total covers the LiDAR data.
+     *
+     * Precondition:
+     *  - The example input with two LiDAR workers, both listed in "RemoteWorkers".
+     *
+     * Postcondition:
+     *  - The output counts every tracked object, and the run ends before its duration, like a
+     *    local run does.
+     */
+    @Test
+    void testRemoteWorkers_shareTrackedCount(@TempDir Path directory) throws Exception {
+        Path input = Paths.get("example input");
+        for (String file : new String[] {"camera_data.json", "lidar_data.json", "pose_data.json"}) {
+            Files.copy(input.resolve(file), directory.resolve(file));
+        }
+        JsonObject config = read(input.resolve("configuration_file.json"));
+        JsonObject second = new JsonObject();
+        second.addProperty("id", 2);
+        second.addProperty("frequency", 0);
+        config.getAsJsonObject("LiDarWorkers").getAsJsonArray("LidarConfigurations").add(second);
+        config.addProperty("TickTime", 20);
+        config.addProperty("TickUnit", "ms");
+        JsonObject remote = new JsonObject();
+        remote.addProperty("transport", "shm");
+        remote.addProperty("address", "rings");
+        JsonArray ids = new JsonArray();
+        ids.add(1);
+        ids.add(2);
+        remote.add("lidarIds", ids);
+        config.add("RemoteWorkers", remote);
+        Path configFile = directory.resolve("configuration_file.json");
+        Files.write(configFile, config.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<Thread> processes = new ArrayList<>();
+        processes.add(new Thread(() -> {
+            try (SimulationContext.Scope scope = new SimulationContext("host").bind()) {
+                GurionRockRunner.run(configFile.toString());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }));
+        for (int id = 1; id <= 2; ++id) {
+            String[] args = {configFile.toString(), String.valueOf(id)};
+            processes.add(new Thread(() -> {
+                try (SimulationContext.Scope scope = new SimulationContext("worker-" + args[1]).bind()) {
+                    GurionRockWorker.main(args);
+                }
+            }));
+        }
+        for (Thread process : processes) {
+            process.start();
+        }
+        for (Thread process : processes) {
+            process.join(60_000);
+            assertFalse(process.isAlive(), process.getName() + " should end");
+        }
+
+        JsonObject output = read(directory.resolve("output_file.json"));
+        assertEquals(13, output.get("numTrackedObjects").getAsInt());
+        assertTrue(output.get("systemRuntime").getAsInt() < config.get("Duration").getAsInt(),
+                   "the LiDAR workers should end the run before its duration");
+    }
+
+    private static JsonObject read(Path file) throws IOException {
+        return JsonParser.parseString(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+}
@@ -0,0 +1,86 @@
+package bgu.spl.mics.application.messages;
+
+import bgu.spl.mics.Message;
+import bgu.spl.mics.application.objects.CloudPoint;
+import bgu.spl.mics.application.objects.DetectedObject;
+import bgu.spl.mics.application.objects.Pose;
+import bgu.spl.mics.application.objects.StampedDetectedObjects;
+import bgu.spl.mics.application.objects.TrackedObject;
+import bgu.spl.mics.application.services.TimeService;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for SensorMessageCodec: every message type survives a round trip.
+ */
+class SensorMessageCodecTest {
+
+    private final SensorMessageCodec codec = new SensorMessageCodec();
+
+    private Message roundTrip(Message m) {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        codec.encode(m, buffer);
+        buffer.flip();
+        Message decoded = codec.decode(buffer);
+        assertFalse(buffer.hasRemaining(), "decoding should consume the whole encoding");
+        return decoded;
+    }
+
+    /**
+     * Test #1: Broadcasts keep their fields, including collapsed ticks and the sender class.
+     */
+    @Test
+    void testBroadcasts_roundTrip() {
+        TickBroadcast tick = (TickBroadcast) roundTrip(new TickBroadcast(3).coalesce(new TickBroadcast(5)));
+        assertEquals(3, tick.getFirstTick());
+        assertEquals(5, tick.getCurrentTick());
+
+        TerminatedBroadcast terminated = (TerminatedBroadcast) roundTrip(new TerminatedBroadcast(TimeService.class, true));
+        assertEquals(TimeService.class, terminated.getSenderClass());
+        assertTrue(terminated.isControl());
+
+        CrashedBroadcast crashed = (CrashedBroadcast) roundTrip(new CrashedBroadcast("Camera1", "disconnected"));
+        assertEquals("Camera1", crashed.getfaultySensor());
+        assertEquals("disconnected", crashed.getErrorDescription());
+
+        TrackedObjectsBroadcast tracked = (TrackedObjectsBroadcast) roundTrip(new TrackedObjectsBroadcast(42));
+        assertEquals(42, tracked.getTotal());
+    }
+
+    /**
+     * Test #2: Events keep their nested objects, and Boolean and null results survive.
+     */
+    @Test
+    void testEvents_roundTrip() {
+        DetectObjectsEvent detect = (DetectObjectsEvent) roundTrip(new DetectObjectsEvent(2,
+                new StampedDetectedObjects(7, Arrays.asList(new DetectedObject("Wall_1", "Wall"), new DetectedObject("Door", null)))));
+        assertEquals(2, detect.getCameraId());
+        assertEquals(7, detect.getStampedObjects().getTime());
+        assertEquals("Wall_1", detect.getStampedObjects().getDetectedObjects().get(0).getId());
+        assertNull(detect.getStampedObjects().getDetectedObjects().get(1).getDescription());
+
+        TrackedObjectsEvent tracked = (TrackedObjectsEvent) roundTrip(new TrackedObjectsEvent(Collections.singletonList(
+                new TrackedObject("Chair", 4, "Chair", Arrays.asList(new CloudPoint(1.5, -2.25), new CloudPoint(0.0, 3.0))))));
+        TrackedObject object = tracked.getTrackedObjects().get(0);
+        assertEquals("Chair", object.getId());
+        assertEquals(4, object.getTime());
+        assertEquals(-2.25, object.getCoordinates().get(0).getY());
+        assertEquals(2, object.getCoordinates().size());
+
+        Pose pose = ((PoseEvent) roundTrip(new PoseEvent(new Pose(9, 1.5f, 2.5f, 90f)))).getPose();
+        assertEquals(9, pose.getTime());
+        assertEquals(90f, pose.getYaw());
+
+        for (Boolean result : new Boolean[] {true, false, null}) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            codec.encodeResult(result, buffer);
+            buffer.flip();
+            assertEquals(result, codec.decodeResult(buffer));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LiDarDataBase lookups by object id and time, the points stored for them, and
+ * the window kept of streamed data.
+ */
+class LiDarDataBaseTest {
+
+    /**
+     * Test #1: Every entry is found by its id and time, including objects seen at many times.
+     *
+     * Postcondition:
+     *  - Lookups return the entry with that id and time, the first one if it repeats, and -1
+     *    for an id or time that has none.
+     */
+    @Test
+    void testFind_findsEntries() {
+        List<List<Double>> points = Collections.emptyList();
+        List<StampedCloudPoints> cloudPoints = new ArrayList<>();
+        for (int time = 0; time < 500; ++time) {
+            cloudPoints.add(new StampedCloudPoints("Wall_1", time, points));
+            cloudPoints.add(new StampedCloudPoints("Chair_" + time, time, points));
+        }
+        cloudPoints.add(new StampedCloudPoints("Wall_1", 7, points));
+        LiDarDataBase db = new LiDarDataBase(cloudPoints);
+
+        for (int entry = 0; entry < 1000; ++entry) {
+            StampedCloudPoints stp = cloudPoints.get(entry);
+            assertEquals(entry, db.find(stp.getId(), stp.getTime()));
+        }
+        assertEquals(1001, db.size());
+        assertEquals(14, db.find("Wall_1", 7));
+        assertEquals(-1, db.find("Wall_1", 500));
+        assertEquals(-1, db.find("Chair_3", 4));
+        assertEquals(-1, db.find("Door", 3));
+        assertNull(db.getStampedCloudPoints("Door", 3));
+        assertEquals(-1, new LiDarDataBase(new ArrayList<>()).find("Wall_1", 0));
+    }
+
+    /**
+     * Test #2: The x and y of every point are kept in entry order, and z is dropped.
+     *
+     * Postcondition:
+     *  - Each entry reads back its own points, an entry without points has none, and a copied
+     *    entry holds x and y only.
+     */
+    @Test
+    void testPoints_keptPerEntry() {
+        List<StampedCloudPoints> cloudPoints = Arrays.asList(
+                new StampedCloudPoints("Wall_1", 2, Arrays.asList(Arrays.asList(1.0, 2.0, 0.1), Arrays.asList(3.0, -4.5, 0.1))),
+                new StampedCloudPoints("Door", 2, new ArrayList<>()),
+                new StampedCloudPoints("Chair", 3, Collections.singletonList(Arrays.asList(-0.5, 6.25, 0.1))));
+        LiDarDataBase db = new LiDarDataBase(cloudPoints);
+
+        int wall = db.find("Wall_1", 2);
+        assertEquals(2, db.getPointCount(wall));
+        assertEquals(3.0, db.getX(wall, 1));
+        assertEquals(-4.5, db.getY(wall, 1));
+        assertEquals(0, db.getPointCount(db.find("Door", 2)));
+        int chair = db.find("Chair", 3);
+        assertEquals(-0.5, db.getX(chair, 0));
+        assertEquals(6.25, db.getY(chair, 0));
+
+        StampedCloudPoints copy = db.getStampedCloudPoints("Wall_1", 2);
+        assertEquals(Arrays.asList(Arrays.asList(1.0, 2.0), Arrays.asList(3.0, -4.5)), copy.getCloudPoints());
+    }
+
+    /**
+     * Test #3: Streamed data is found up to the current tick, for as long as it is kept.
+     *
+     * Precondition:
+     *  - A JSON file with Wall_1 at times 1 to 10, read one tick ahead and kept for two ticks.
+     *
+     * Postcondition:
+     *  - At tick 5, times 3 to 5 are found with their points, older and later ones are not,
+     *    and the size is only known once the clock reached the last entry.
+     */
+    @Test
+    void testStream_keepsWindow(@TempDir Path directory) throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int time = 1; time <= 10; ++time) {
+            json.append(time == 1 ? "" : ", ")
+                .append("{\"id\": \"Wall_1\", \"time\": ").append(time)
+                .append(", \"cloudPoints\": [[").append(time).append(", -1.5, 0.1]]}");
+        }
+        Path file = directory.resolve("lidar_data.json");
+        Files.write(file, json.append(']').toString().getBytes(StandardCharsets.UTF_8));
+        LiDarDataBase db = new LiDarDataBase(new LiDarStream(file, 1, 2));
+
+        db.advanceTo(5);
+        for (int time = 3; time <= 5; ++time) {
+            int entry = db.find("Wall_1", time);
+            assertEquals(time - 1, entry);
+            assertEquals(1, db.getPointCount(entry));
+            assertEquals(time, db.getX(entry, 0));
+            assertEquals(-1.5, db.getY(entry, 0));
+        }
+        assertEquals(-1, db.find("Wall_1", 2));
+        assertEquals(-1, db.find("Wall_1", 6));
+        assertFalse(db.isComplete());
+
+        db.advanceTo(10);
+        assertEquals(9, db.find("Wall_1", 10));
+        assertTrue(db.isComplete());
+        assertEquals(10, db.size());
+        db.close();
+    }
+
+    /**
+     * Test #4: A JSON file is loaded in one pass into the same columns, and a broken one fails.
+     *
+     * Postcondition:
+     *  - Entries and their x and y are read back in file order, an entry without points has
+     *    none, and a file that is not a list of entries throws IOException.
+     */
+    @Test
+    void testLoad_readsJsonIntoColumns(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("lidar_data.json");
+        Files.write(file, ("[{\"id\": \"Wall_1\", \"time\": 2, \"cloudPoints\": [[1.0, 2.0, 0.1], [3.0, -4.5, 0.1]]},"
+                           + " {\"time\": 2, \"id\": \"Door\", \"cloudPoints\": []},"
+                           + " {\"id\": \"Chair\", \"time\": 3, \"cloudPoints\": [[-0.5, 6.25, 0.1]]}]")
+                          .getBytes(StandardCharsets.UTF_8));
+        LiDarDataBase db = LiDarDataBase.load(file.toString());
+
+        assertEquals(3, db.size());
+        assertEquals(0, db.find("Wall_1", 2));
+        assertEquals(2, db.getPointCount(0));
+        assertEquals(3.0, db.getX(0, 1));
+        assertEquals(-4.5, db.getY(0, 1));
+        assertEquals("Door", db.getId(1));
+        assertEquals(0, db.getPointCount(1));
+        assertEquals(-0.5, db.getX(db.find("Chair", 3), 0));
+        assertEquals(6.25, db.getY(2, 0));
+
+        Path broken = directory.resolve("broken.json");
+        Files.write(broken, "{\"id\": \"Wall_1\"}".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> LiDarDataBase.load(broken.toString()));
+    }
+}
@@ -0,0 +1,80 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LiDarDataFile: a converted file reads back like the JSON it came from.
+ */
+class LiDarDataFileTest {
+
+    private static final String JSON = "[\n"
+            + "  {\"time\": 2, \"id\": \"Wall_1\", \"cloudPoints\": [[0.1, 3.5, 0.1], [0.2, 3.6, 0.1], [0.3, 3.7, 0.1]]},\n"
+            + "  {\"time\": 2, \"id\": \"Door\", \"cloudPoints\": []},\n"
+            + "  {\"time\": 4, \"id\": \"Wall_1\", \"cloudPoints\": [[-1.25, 2.0, 0.104], [1e-3, -7.5, 0.104]]},\n"
+            + "  {\"id\": \"Chair\", \"cloudPoints\": [[5.0, 6.0, 0.1]], \"time\": 4, \"note\": {\"ignored\": [1]}}\n"
+            + "]";
+
+    /**
+     * Test #1: The converted file holds the entries and points of the JSON, without z.
+     *
+     * Postcondition:
+     *  - Every lookup and point of the mapped file, read through point mappings of two points
+     *    each, matches the JSON read onto the heap, and no temporary files are left behind.
+     */
+    @Test
+    void testConvert_matchesJson(@TempDir Path directory) throws IOException {
+        Path json = directory.resolve("lidar_data.json");
+        Files.write(json, JSON.getBytes(StandardCharsets.UTF_8));
+        Path bin = directory.resolve("lidar_data.bin");
+
+        assertEquals(4, LiDarDataFile.convert(json, bin));
+        assertFalse(LiDarDataFile.isBinary(json));
+        assertTrue(LiDarDataFile.isBinary(bin));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+
+        LiDarDataBase mapped = new LiDarDataBase(LiDarDataFile.open(bin, 1));
+        LiDarDataBase parsed = new LiDarDataBase(Arrays.asList(
+                new StampedCloudPoints("Wall_1", 2, Arrays.asList(Arrays.asList(0.1, 3.5), Arrays.asList(0.2, 3.6), Arrays.asList(0.3, 3.7))),
+                new StampedCloudPoints("Door", 2, Arrays.asList()),
+                new StampedCloudPoints("Wall_1", 4, Arrays.asList(Arrays.asList(-1.25, 2.0), Arrays.asList(1e-3, -7.5))),
+                new StampedCloudPoints("Chair", 4, Arrays.asList(Arrays.asList(5.0, 6.0)))));
+        assertEquals(parsed.size(), mapped.size());
+        for (int entry = 0; entry < parsed.size(); ++entry) {
+            assertEquals(entry, mapped.find(parsed.getId(entry), parsed.getTime(entry)));
+            assertEquals(parsed.getPointCount(entry), mapped.getPointCount(entry));
+            for (int p = 0; p < parsed.getPointCount(entry); ++p) {
+                assertEquals(parsed.getX(entry, p), mapped.getX(entry, p));
+                assertEquals(parsed.getY(entry, p), mapped.getY(entry, p));
+            }
+        }
+        assertEquals(-1, mapped.find("Wall_1", 3));
+        assertEquals(-1, mapped.find("Window", 2));
+    }
+
+    /**
+     * Test #2: A file that is cut short is refused when opened.
+     */
+    @Test
+    void testOpen_refusesTruncatedFile(@TempDir Path directory) throws IOException {
+        Path json = directory.resolve("lidar_data.json");
+        Files.write(json, JSON.getBytes(StandardCharsets.UTF_8));
+        Path bin = directory.resolve("lidar_data.bin");
+        LiDarDataFile.convert(json, bin);
+
+        byte[] bytes = Files.readAllBytes(bin);
+        Files.write(bin, Arrays.copyOf(bytes, bytes.length - 8));
+        assertThrows(IOException.class, () -> LiDarDataFile.open(bin));
+    }
+}
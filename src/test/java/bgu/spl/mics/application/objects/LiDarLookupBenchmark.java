@@ -0,0 +1,90 @@
+package bgu.spl.mics.application.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A standalone benchmark of {@link LiDarDataBase#find} against the linear
+ * scan it replaced, at growing database sizes.
+ * <p>
+ * Every size gets a database of objects seen at consecutive times, as in a long LiDAR log,
+ * and looks up random entries that exist. The scan is timed on fewer lookups, since one
+ * lookup already takes milliseconds at the largest size.
+ * <p>
+ * Run with: java -Xmx3g -cp target/classes:target/test-classes bgu.spl.mics.application.objects.LiDarLookupBenchmark [sizes...]
+ */
+public class LiDarLookupBenchmark {
+    private static final int OBJECTS = 1_000;
+    private static final int INDEXED_LOOKUPS = 1_000_000;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? parse(args) : new int[] {10_000, 1_000_000, 10_000_000};
+        String[] ids = new String[OBJECTS];
+        for (int i = 0; i < OBJECTS; ++i) {
+            ids[i] = "Obj_" + i;
+        }
+        List<List<Double>> points = Collections.emptyList();
+
+        System.out.printf("%12s %12s %16s %16s%n", "entries", "index ms", "indexed ns/op", "scan ns/op");
+        for (int size : sizes) {
+            List<StampedCloudPoints> cloudPoints = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                cloudPoints.add(new StampedCloudPoints(ids[i % OBJECTS], i / OBJECTS, points));
+            }
+            long start = System.nanoTime();
+            LiDarDataBase db = new LiDarDataBase(cloudPoints);
+            double indexMillis = (System.nanoTime() - start) / 1e6;
+
+            Random random = new Random(size);
+            // Warm up, then measure
+            indexed(db, ids, size, random, INDEXED_LOOKUPS);
+            double indexedNanos = indexed(db, ids, size, random, INDEXED_LOOKUPS);
+            int scans = Math.max(20, 200_000_000 / size);
+            scanned(cloudPoints, ids, size, random, scans);
+            double scanNanos = scanned(cloudPoints, ids, size, random, scans);
+            System.out.printf("%,12d %12.1f %16.1f %16.1f%n", size, indexMillis, indexedNanos, scanNanos);
+        }
+    }
+
+    private static double indexed(LiDarDataBase db, String[] ids, int size, Random random, int lookups) {
+        long start = System.nanoTime();
+        for (int n = 0; n < lookups; ++n) {
+            int i = random.nextInt(size);
+            if (db.find(ids[i % OBJECTS], i / OBJECTS) < 0) {
+                throw new AssertionError("missing entry " + i);
+            }
+        }
+        return (System.nanoTime() - start) / (double) lookups;
+    }
+
+    // The lookup LiDarDataBase did before it was indexed
+    private static double scanned(List<StampedCloudPoints> cloudPoints, String[] ids, int size, Random random, int lookups) {
+        long start = System.nanoTime();
+        for (int n = 0; n < lookups; ++n) {
+            int i = random.nextInt(size);
+            String id = ids[i % OBJECTS];
+            int time = i / OBJECTS;
+            StampedCloudPoints found = null;
+            for (StampedCloudPoints stp : cloudPoints) {
+                if (stp.getTime() == time && stp.getId().equals(id)) {
+                    found = stp;
+                    break;
+                }
+            }
+            if (found == null) {
+                throw new AssertionError("missing entry " + i);
+            }
+        }
+        return (System.nanoTime() - start) / (double) lookups;
+    }
+
+    private static int[] parse(String[] args) {
+        int[] sizes = new int[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        return sizes;
+    }
+}
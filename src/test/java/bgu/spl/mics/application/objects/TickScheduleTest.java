@@ -0,0 +1,58 @@
+package bgu.spl.mics.application.objects;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for TickSchedule: the ticks kept for detections, trackings and poses, and the jumps
+ * over the idle ticks between them.
+ */
+class TickScheduleTest {
+
+    /**
+     * Test #1: A detection at time 10 of a camera with frequency 2, tracked by a LiDAR worker
+     * with frequency 5, keeps ticks 12-14 and 15-17; a pose at time 40 keeps 40-42.
+     *
+     * Postcondition:
+     *  - From tick 3, the clock jumps to 12, from 17 to 40, and from 42 to the duration.
+     */
+    @Test
+    void testNextTick_skipsIdleTicks() {
+        Camera camera = new Camera(1, 2, new ArrayList<>());
+        camera.addDetectedObject(10, new DetectedObject("Wall_1", "Wall"));
+        TickSchedule schedule = new TickSchedule(Collections.singletonList(camera),
+                Collections.singletonList(new LiDarWorkerTracker(1, 5)),
+                Collections.singletonList(new Pose(40, 0f, 0f, 0f)), 100);
+
+        assertEquals(2, schedule.nextTick(1));
+        assertEquals(12, schedule.nextTick(3));
+        assertEquals(13, schedule.nextTick(12));
+        assertEquals(15, schedule.nextTick(14));
+        assertEquals(40, schedule.nextTick(17));
+        assertEquals(100, schedule.nextTick(42));
+        assertEquals(101, schedule.nextTick(100));
+    }
+
+    /**
+     * Test #2: A LiDAR worker faster than the camera tracks a detection the tick after it is sent.
+     */
+    @Test
+    void testNextTick_trackingWaitsForSending() {
+        Camera camera = new Camera(1, 4, new ArrayList<>());
+        camera.addDetectedObject(10, new DetectedObject("Wall_1", "Wall"));
+        TickSchedule schedule = new TickSchedule(Collections.singletonList(camera),
+                Arrays.asList(new LiDarWorkerTracker(1, 0), new LiDarWorkerTracker(2, 1)),
+                Collections.emptyList(), 100);
+
+        // Sent at 14, tracked at 15: ticks 14 to 17
+        assertEquals(14, schedule.nextTick(3));
+        assertEquals(17, schedule.nextTick(16));
+        assertEquals(100, schedule.nextTick(17));
+        assertEquals(3 + 4 + 1, schedule.size());
+    }
+}
@@ -0,0 +1,87 @@
+package bgu.spl.mics.application.services;
+
+import bgu.spl.mics.MicroService;
+import bgu.spl.mics.SimulationContext;
+import bgu.spl.mics.application.messages.TerminatedBroadcast;
+import bgu.spl.mics.application.messages.TickBroadcast;
+import bgu.spl.mics.application.objects.StatisticalFolder;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for TimeService with ticks shorter than a second.
+ */
+class TimeServiceTest {
+
+    private static final int TICK_MILLIS = 20;
+    private static final int WORK_MILLIS = 15;
+
+    /**
+     * Spends WORK_MILLIS on every tick, as a sensor handling its data would.
+     */
+    private static class SlowTickService extends MicroService {
+        private final CountDownLatch ready;
+        private final AtomicInteger ticksHandled = new AtomicInteger();
+
+        SlowTickService(CountDownLatch ready) {
+            super("slow-ticks");
+            this.ready = ready;
+        }
+
+        @Override
+        protected void initialize() {
+            subscribeBroadcast(TickBroadcast.class, tick -> {
+                try {
+                    Thread.sleep(WORK_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                ticksHandled.addAndGet(tick.getCurrentTick() - tick.getFirstTick() + 1);
+            });
+            subscribeBroadcast(TerminatedBroadcast.class, terminated -> terminate());
+            ready.countDown();
+        }
+    }
+
+    /**
+     * Test #1: Millisecond ticks are sent at a fixed rate.
+     *
+     * Precondition:
+     *  - A subscriber spends 15 ms handling every tick.
+     *
+     * Postcondition:
+     *  - A run of 25 ticks of 20 ms after the first takes about 500 ms, not the 875 ms it would
+     *    take if the handling time added up, and every one of those ticks is recorded in the jitter.
+     */
+    @Test
+    void testMillisecondTicks_fixedRate() throws InterruptedException {
+        try (SimulationContext.Scope scope = new SimulationContext("time-service").bind()) {
+            CountDownLatch ready = new CountDownLatch(1);
+            SlowTickService subscriber = new SlowTickService(ready);
+            Thread subscriberThread = new Thread(subscriber);
+            subscriberThread.start();
+            assertTrue(ready.await(5, TimeUnit.SECONDS), "the subscriber should initialize");
+
+            TimeService timeService = new TimeService(TICK_MILLIS, TimeUnit.MILLISECONDS, 26, null, false);
+            Thread thread = new Thread(timeService);
+            long start = System.nanoTime();
+            thread.start();
+            thread.join(5_000);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            subscriberThread.join(5_000);
+
+            assertFalse(thread.isAlive());
+            assertFalse(subscriberThread.isAlive());
+            assertEquals(26, subscriber.ticksHandled.get(), "the subscriber should handle every tick");
+            assertEquals(26, StatisticalFolder.getInstance().getSystemRuntime());
+            assertEquals(25, StatisticalFolder.getInstance().getTickJitter().getCount());
+            assertTrue(elapsedMillis >= 25 * TICK_MILLIS, "took " + elapsedMillis + " ms");
+            assertTrue(elapsedMillis < 25 * (TICK_MILLIS + WORK_MILLIS), "took " + elapsedMillis + " ms");
+        }
+    }
+}